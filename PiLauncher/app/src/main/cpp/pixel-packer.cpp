@@ -0,0 +1,142 @@
+#include <jni.h>
+#include <stdint.h>
+#include <string.h>
+
+// Native side of PixelPacker.pack(ByteBuffer, ...), the same kernel as the
+// Java one: per-pixel luma (r + 4g + b) against the 8x8 threshold table of
+// the mode, 8x8 blocks transposed into bank/column order. Kept free of any
+// Android header so it builds for a host JVM too.
+
+namespace {
+
+const int BIT_PER_BANK     = 8;
+const int FORMAT_ARGB_8888 = 0;
+const int FORMAT_RGB_565   = 1;
+const int FORMAT_ALPHA_8   = 2;
+
+inline uint64_t transpose8x8(uint64_t x) {
+    uint64_t t;
+    t = (x ^ (x >> 7))  & 0x00AA00AA00AA00AAULL; x = x ^ t ^ (t << 7);
+    t = (x ^ (x >> 14)) & 0x0000CCCC0000CCCCULL; x = x ^ t ^ (t << 14);
+    t = (x ^ (x >> 28)) & 0x00000000F0F0F0F0ULL; x = x ^ t ^ (t << 28);
+    return x;
+}
+
+// Bytes R, G, B, A whatever the byte order
+struct Argb8888 {
+    const uint8_t* pixels;
+
+    inline int32_t luma(int index) const {
+        const uint8_t* pixel = pixels + (index << 2);
+        return pixel[0] + (pixel[1] << 2) + pixel[2];
+    }
+};
+
+// The alpha as a gray level, r = g = b
+struct Alpha8 {
+    const uint8_t* pixels;
+
+    inline int32_t luma(int index) const {
+        return pixels[index] * 6;
+    }
+};
+
+// Channels widened to 8 bits by repeating their high bits, as in the Java loop
+template <bool SWAP>
+struct Rgb565 {
+    const uint8_t* pixels;
+
+    inline int32_t luma(int index) const {
+        uint16_t color;
+        memcpy(&color, pixels + (index << 1), sizeof(color));
+        if (SWAP) {
+            color = (uint16_t) ((color << 8) | (color >> 8));
+        }
+        int32_t red   = (color >> 11) & 0x1F;
+        int32_t green = (color >> 5) & 0x3F;
+        int32_t blue  = color & 0x1F;
+        return ((red << 3) | (red >> 2)) + (((green << 2) | (green >> 4)) << 2) + ((blue << 3) | (blue >> 2));
+    }
+};
+
+// The sign bit of threshold - luma is set when luma is above it
+template <typename Reader>
+inline uint32_t packRow(const Reader& reader, int pixel, const jint* threshold, int columns) {
+    uint32_t bits = 0;
+    for (int column = 0; column < columns; column++) {
+        bits |= ((uint32_t) (threshold[column] - reader.luma(pixel + column)) >> 31) << column;
+    }
+    return bits;
+}
+
+// Whole blocks, a loop of known length the compiler unrolls
+template <int COLUMNS, typename Reader>
+inline uint32_t packRow(const Reader& reader, int pixel, const jint* threshold) {
+    return packRow(reader, pixel, threshold, COLUMNS);
+}
+
+template <typename Reader>
+void pack(const Reader& reader, int width, int height, const jint* thresholds, uint8_t* out) {
+    int banks = height / BIT_PER_BANK;
+    for (int bank = 0; bank < banks; bank++) {
+        int      rowBase = bank * BIT_PER_BANK * width;
+        uint8_t* outBase = out + bank * width;
+        for (int x0 = 0; x0 < width; x0 += BIT_PER_BANK) {
+            int      columns = width - x0 < BIT_PER_BANK ? width - x0 : BIT_PER_BANK;
+            uint64_t block   = 0;
+            for (int row = 0; row < BIT_PER_BANK; row++) {
+                int         pixel     = rowBase + row * width + x0;
+                const jint* threshold = thresholds + row * BIT_PER_BANK;
+                uint32_t    bits      = columns == BIT_PER_BANK
+                        ? packRow<BIT_PER_BANK>(reader, pixel, threshold)
+                        : packRow(reader, pixel, threshold, columns);
+                block |= (uint64_t) bits << (row * BIT_PER_BANK);
+            }
+            block = transpose8x8(block);
+            for (int column = 0; column < columns; column++) {
+                outBase[x0 + column] = (uint8_t) (block >> (column * BIT_PER_BANK));
+            }
+        }
+    }
+}
+
+} // namespace
+
+// The sizes of the buffers are checked by PixelPacker before the call
+extern "C"
+JNIEXPORT jboolean JNICALL
+Java_com_cocoonshu_example_pilauncher_PixelPacker_nativePack(
+        JNIEnv* env,
+        jclass /* clazz */,
+        jobject pixelBuffer,
+        jint format,
+        jboolean swap,
+        jint width,
+        jint height,
+        jintArray thresholdArray,
+        jobject outBuffer) {
+    const uint8_t* pixels = (const uint8_t*) env->GetDirectBufferAddress(pixelBuffer);
+    uint8_t*       out    = (uint8_t*) env->GetDirectBufferAddress(outBuffer);
+    if (pixels == NULL || out == NULL) {
+        return JNI_FALSE;
+    }
+
+    jint thresholds[BIT_PER_BANK * BIT_PER_BANK];
+    env->GetIntArrayRegion(thresholdArray, 0, BIT_PER_BANK * BIT_PER_BANK, thresholds);
+    if (format == FORMAT_ARGB_8888) {
+        Argb8888 reader = { pixels };
+        pack(reader, width, height, thresholds, out);
+    } else if (format == FORMAT_ALPHA_8) {
+        Alpha8 reader = { pixels };
+        pack(reader, width, height, thresholds, out);
+    } else if (format == FORMAT_RGB_565 && swap) {
+        Rgb565<true> reader = { pixels };
+        pack(reader, width, height, thresholds, out);
+    } else if (format == FORMAT_RGB_565) {
+        Rgb565<false> reader = { pixels };
+        pack(reader, width, height, thresholds, out);
+    } else {
+        return JNI_FALSE;
+    }
+    return JNI_TRUE;
+}
@@ -0,0 +1,173 @@
+package com.cocoonshu.example.pilauncher;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothProfile;
+import android.util.Log;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+
+/**
+ * The hidden operations of the BluetoothA2dpSink proxy behind cached handles.
+ * connect, disconnect, getPriority, setPriority and isA2dpPlaying aren't part
+ * of the public API, so they are looked up as HiddenMethods, once for the
+ * class of the proxy, and what the platform turned out to have is kept as
+ * capability bits to check before offering an operation. getConnectionState
+ * is public on BluetoothProfile and is called directly. An operation the
+ * platform doesn't have, or that fails, is logged and reported as failed,
+ * it never throws.
+ * @Author Cocoonshu
+ * @Date 2017-05-26
+ */
+public final class A2dpSinkAccessor {
+    public static final int CAPABILITY_CONNECT      = 0x01;
+    public static final int CAPABILITY_DISCONNECT   = 0x02;
+    public static final int CAPABILITY_GET_PRIORITY = 0x04;
+    public static final int CAPABILITY_SET_PRIORITY = 0x08;
+    public static final int CAPABILITY_IS_PLAYING   = 0x10;
+
+    /**
+     * Hidden in BluetoothProfile too
+     */
+    public static final int PRIORITY_UNDEFINED    = -1;
+    public static final int PRIORITY_OFF          = 0;
+    public static final int PRIORITY_ON           = 100;
+    public static final int PRIORITY_AUTO_CONNECT = 1000;
+
+    private static final String TAG = "A2dpSinkAccessor";
+
+    private final BluetoothProfile mProfile;
+    private final HiddenMethod     mConnect;
+    private final HiddenMethod     mDisconnect;
+    private final HiddenMethod     mGetPriority;
+    private final HiddenMethod     mSetPriority;
+    private final HiddenMethod     mIsPlaying;
+    private final int              mCapabilities;
+
+    public A2dpSinkAccessor(BluetoothProfile profile) {
+        Class<?> owner = profile.getClass();
+        mProfile     = profile;
+        mConnect     = HiddenMethod.of(owner, "connect", BluetoothDevice.class);
+        mDisconnect  = HiddenMethod.of(owner, "disconnect", BluetoothDevice.class);
+        mGetPriority = HiddenMethod.of(owner, "getPriority", BluetoothDevice.class);
+        mSetPriority = HiddenMethod.of(owner, "setPriority", BluetoothDevice.class, int.class);
+        mIsPlaying   = HiddenMethod.of(owner, "isA2dpPlaying", BluetoothDevice.class);
+
+        int capabilities = 0;
+        capabilities |= mConnect.isAvailable() ? CAPABILITY_CONNECT : 0;
+        capabilities |= mDisconnect.isAvailable() ? CAPABILITY_DISCONNECT : 0;
+        capabilities |= mGetPriority.isAvailable() ? CAPABILITY_GET_PRIORITY : 0;
+        capabilities |= mSetPriority.isAvailable() ? CAPABILITY_SET_PRIORITY : 0;
+        capabilities |= mIsPlaying.isAvailable() ? CAPABILITY_IS_PLAYING : 0;
+        mCapabilities = capabilities;
+        Log.d(TAG, "[A2dpSinkAccessor] " + owner.getName() + " capabilities 0x" + Integer.toHexString(capabilities));
+    }
+
+    public BluetoothProfile getProfile() {
+        return mProfile;
+    }
+
+    public int getCapabilities() {
+        return mCapabilities;
+    }
+
+    /**
+     * @param capabilities CAPABILITY_* bits, all of them needed
+     */
+    public boolean hasCapabilities(int capabilities) {
+        return (mCapabilities & capabilities) == capabilities;
+    }
+
+    public List<BluetoothDevice> getConnectedDevices() {
+        return mProfile.getConnectedDevices();
+    }
+
+    public int getConnectionState(BluetoothDevice device) {
+        return mProfile.getConnectionState(device);
+    }
+
+    /**
+     * @return true if the connection was started
+     */
+    public boolean connect(BluetoothDevice device) {
+        return Boolean.TRUE.equals(invoke(mConnect, device));
+    }
+
+    /**
+     * @return true if the disconnection was started
+     */
+    public boolean disconnect(BluetoothDevice device) {
+        return Boolean.TRUE.equals(invoke(mDisconnect, device));
+    }
+
+    /**
+     * @return one of the PRIORITY_* values, PRIORITY_UNDEFINED if it can't be read
+     */
+    public int getPriority(BluetoothDevice device) {
+        Object priority = invoke(mGetPriority, device);
+        return priority instanceof Integer ? (Integer) priority : PRIORITY_UNDEFINED;
+    }
+
+    public boolean setPriority(BluetoothDevice device, int priority) {
+        return Boolean.TRUE.equals(invoke(mSetPriority, device, priority));
+    }
+
+    public boolean isPlaying(BluetoothDevice device) {
+        return Boolean.TRUE.equals(invoke(mIsPlaying, device));
+    }
+
+    /**
+     * Disconnect every connected device, with a single lookup of the devices
+     * @return the number of disconnections started
+     */
+    public int disconnectAll() {
+        if (!mDisconnect.isAvailable()) {
+            Log.w(TAG, "[disconnectAll] No disconnect method in " + mProfile.getClass().getName());
+            return 0;
+        }
+        List<BluetoothDevice> devices = mProfile.getConnectedDevices();
+        int disconnected = 0;
+        for (int i = 0; i < devices.size(); i++) {
+            BluetoothDevice device = devices.get(i);
+            Log.i(TAG, "[disconnectAll] " + device);
+            if (disconnect(device)) {
+                disconnected++;
+            }
+        }
+        return disconnected;
+    }
+
+    /**
+     * Set the priority of every connected device, PRIORITY_OFF keeping them
+     * from connecting back on their own once disconnected
+     * @return the number of devices updated
+     */
+    public int setPriorityAll(int priority) {
+        if (!mSetPriority.isAvailable()) {
+            Log.w(TAG, "[setPriorityAll] No setPriority method in " + mProfile.getClass().getName());
+            return 0;
+        }
+        List<BluetoothDevice> devices = mProfile.getConnectedDevices();
+        int updated = 0;
+        for (int i = 0; i < devices.size(); i++) {
+            if (setPriority(devices.get(i), priority)) {
+                updated++;
+            }
+        }
+        return updated;
+    }
+
+    private Object invoke(HiddenMethod method, Object... arguments) {
+        try {
+            return method.invoke(mProfile, arguments);
+        } catch (NoSuchMethodException e) {
+            Log.w(TAG, "No " + method.getName() + " method in the " + mProfile.getClass().getName() +
+                    " class, ignoring request.");
+            return null;
+        } catch (InvocationTargetException | IllegalAccessException e) {
+            Log.w(TAG, "Could not execute method '" + method.getName() + "' in profile " +
+                    mProfile.getClass().getName() + ", ignoring request.", e);
+            return null;
+        }
+    }
+}
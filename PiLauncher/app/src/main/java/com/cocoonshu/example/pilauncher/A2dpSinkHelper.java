@@ -23,8 +23,6 @@ import android.content.Intent;
 import android.util.Log;
 
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Helper methods and constants related to the A2DP_SINK profile.
@@ -120,20 +118,51 @@ public final class A2dpSinkHelper {
         return intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE);
     }
 
+    /**
+     * Parses the adapter state, A2DP sink connection and playing state intents.
+     *
+     * @param intent broadcast received
+     * @param time   elapsedRealtime() of the broadcast
+     * @return the event, or null for another intent or one without its device
+     */
+    public static BluetoothEvent parseEvent(Intent intent, long time) {
+        String action = intent.getAction();
+        if (BluetoothAdapter.ACTION_STATE_CHANGED.equals(action)) {
+            return new BluetoothEvent(BluetoothEvent.TYPE_ADAPTER_STATE,
+                    getPreviousAdapterState(intent), getCurrentAdapterState(intent), null, null, time);
+        }
+
+        int type;
+        if (ACTION_CONNECTION_STATE_CHANGED.equals(action)) {
+            type = BluetoothEvent.TYPE_CONNECTION_STATE;
+        } else if (ACTION_PLAYING_STATE_CHANGED.equals(action)) {
+            type = BluetoothEvent.TYPE_PLAYING_STATE;
+        } else {
+            return null;
+        }
+        BluetoothDevice device = getDevice(intent);
+        if (device == null) {
+            return null;
+        }
+        return new BluetoothEvent(type, getPreviousProfileState(intent), getCurrentProfileState(intent),
+                device.getAddress(), device.getName(), time);
+    }
+
     /**
      * Provides a way to call the disconnect method in the BluetoothA2dpSink class that is
      * currently hidden from the public API. Avoid relying on this for production level code, since
-     * hidden code in the API is subject to change.
+     * hidden code in the API is subject to change. The method is looked up once per profile
+     * class and kept by {@link HiddenMethod}, see {@link A2dpSinkAccessor} for the other
+     * hidden methods.
      *
      * @param profile
      * @param device
      * @return
      */
     public static boolean disconnect(BluetoothProfile profile, BluetoothDevice device) {
+        HiddenMethod method = HiddenMethod.of(profile.getClass(), "disconnect", BluetoothDevice.class);
         try {
-            Method m = profile.getClass().getMethod("disconnect", BluetoothDevice.class);
-            m.invoke(profile, device);
-            return true;
+            return Boolean.TRUE.equals(method.invoke(profile, device));
         } catch (NoSuchMethodException e) {
             Log.w(TAG, "No disconnect method in the " + profile.getClass().getName() +
                     " class, ignoring request.");
@@ -0,0 +1,147 @@
+package com.cocoonshu.example.pilauncher;
+
+import com.google.android.things.pio.Gpio;
+import com.google.android.things.pio.PeripheralManagerService;
+import com.google.android.things.pio.SpiDevice;
+
+import java.io.IOException;
+
+/**
+ * DisplayBus on the Android Things peripheral I/O, SPI device and GPIOs
+ * being opened by name through PeripheralManagerService.
+ * @Author Cocoonshu
+ * @Date 2017-05-10
+ */
+public class AndroidThingsBus implements DisplayBus {
+    private static final int BitPerWord = 8;
+
+    private PeripheralManagerService mPeripheral = null;
+    private SpiDevice                mSPI        = null;
+    private Gpio                     mDC         = null;
+    private Gpio                     mBL         = null;
+    private Gpio                     mRST        = null;
+    private Gpio                     mCS         = null;
+    private String                   mBusName    = null;
+    private String                   mDCName     = null;
+    private String                   mCSName     = null;
+    private String                   mRSTName    = null;
+    private String                   mBLName     = null;
+    private int                      mFrequency  = 0;
+
+    public AndroidThingsBus(String name, String dc, String cs, String rst, String bl, int frequency) {
+        mBusName   = name;
+        mDCName    = dc;
+        mCSName    = cs;
+        mRSTName   = rst;
+        mBLName    = bl;
+        mFrequency = frequency;
+    }
+
+    @Override
+    public void open() throws IOException {
+        if (mPeripheral == null) {
+            mPeripheral = new PeripheralManagerService();
+        }
+
+        close();
+        mSPI = mBusName != null ? mPeripheral.openSpiDevice(mBusName) : null;
+        mDC  = mDCName  != null ? mPeripheral.openGpio(mDCName)       : null;
+        mCS  = mCSName  != null ? mPeripheral.openGpio(mCSName)       : null;
+        mRST = mRSTName != null ? mPeripheral.openGpio(mRSTName)      : null;
+        mBL  = mBLName  != null ? mPeripheral.openGpio(mBLName)       : null;
+        if (mSPI == null || mDC == null) {
+            throw new IOException("SPI device and DC line are required");
+        }
+
+        mSPI.setMode(SpiDevice.MODE3);   // Clock signal idles high, data is transferred on the trailing clock edge
+        mSPI.setFrequency(mFrequency);
+        mSPI.setBitsPerWord(BitPerWord); // 8BPW
+        mSPI.setBitJustification(false); // MSB first
+
+        mDC.setDirection(Gpio.DIRECTION_OUT_INITIALLY_LOW);
+        mDC.setActiveType(Gpio.ACTIVE_HIGH);
+        mDC.setValue(false);
+
+        if (mCS != null) {
+            mCS.setDirection(Gpio.DIRECTION_OUT_INITIALLY_HIGH);
+            mCS.setActiveType(Gpio.ACTIVE_LOW);
+            mCS.setValue(false);
+        }
+        if (mRST != null) {
+            mRST.setDirection(Gpio.DIRECTION_OUT_INITIALLY_HIGH);
+            mRST.setActiveType(Gpio.ACTIVE_LOW);
+            mRST.setValue(false);
+        }
+        if (mBL != null) {
+            mBL.setDirection(Gpio.DIRECTION_OUT_INITIALLY_LOW);
+            mBL.setActiveType(Gpio.ACTIVE_HIGH);
+            mBL.setValue(false);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException error = null;
+        try {
+            if (mSPI != null) {
+                mSPI.close();
+            }
+        } catch (IOException exp) {
+            error = exp;
+        }
+        Gpio[] gpios = {mDC, mCS, mRST, mBL};
+        for (Gpio gpio : gpios) {
+            try {
+                if (gpio != null) {
+                    gpio.close();
+                }
+            } catch (IOException exp) {
+                error = exp;
+            }
+        }
+        mSPI = null;
+        mDC  = null;
+        mCS  = null;
+        mRST = null;
+        mBL  = null;
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    @Override
+    public void setDataMode(boolean data) throws IOException {
+        mDC.setValue(data);
+    }
+
+    @Override
+    public void setSelected(boolean selected) throws IOException {
+        if (mCS != null) {
+            mCS.setValue(selected);
+        }
+    }
+
+    @Override
+    public void setReset(boolean asserted) throws IOException {
+        if (mRST != null) {
+            mRST.setValue(asserted);
+        }
+    }
+
+    @Override
+    public void setBacklight(boolean on) throws IOException {
+        if (mBL != null) {
+            mBL.setValue(on);
+        }
+    }
+
+    @Override
+    public boolean isBacklightOn() throws IOException {
+        return mBL != null ? mBL.getValue() : false;
+    }
+
+    @Override
+    public void write(byte[] buffer, int length) throws IOException {
+        mSPI.write(buffer, length);
+    }
+}
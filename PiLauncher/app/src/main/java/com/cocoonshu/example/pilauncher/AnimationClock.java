@@ -0,0 +1,110 @@
+package com.cocoonshu.example.pilauncher;
+
+/**
+ * Fixed timestep clock of the widget animations.
+ * Animation time moves in whole steps of 1/fps, so what the animations draw
+ * only depends on the step they are at, and a frame is due once per step at
+ * most. When the driver thread comes back late the clock jumps over the
+ * steps it missed instead of drawing each of them, the animations keeping
+ * to the wall clock, and those steps are counted as skipped frames.
+ * Driver thread only, except for the counters.
+ * @Author Cocoonshu
+ * @Date 2017-05-30
+ */
+public class AnimationClock {
+    public static final int DEFAULT_FPS = 25;
+
+    private static final long MILLIS_PER_SEC = 1000;
+
+    private volatile long mStepMillis    = MILLIS_PER_SEC / DEFAULT_FPS;
+    private long          mStep          = 0;
+    private long          mTimeStep      = 0;
+    private long          mNextStepTime  = 0;
+    private boolean       mRunning       = false;
+    private volatile long mFrames        = 0;
+    private volatile long mSkippedFrames = 0;
+
+    public AnimationClock() {
+    }
+
+    public AnimationClock(int fps) {
+        setFps(fps);
+    }
+
+    /**
+     * Takes effect from the next start()
+     */
+    public void setFps(int fps) {
+        if (fps <= 0) {
+            throw new IllegalArgumentException("Invalid animation rate " + fps);
+        }
+        mStepMillis = Math.max(MILLIS_PER_SEC / fps, 1);
+    }
+
+    public int getFps() {
+        return (int) (MILLIS_PER_SEC / mStepMillis);
+    }
+
+    /**
+     * Start the animation time over at 0, the first step being due at now
+     */
+    public void start(long now) {
+        mTimeStep     = mStepMillis;
+        mStep         = -1;
+        mNextStepTime = now;
+        mRunning      = true;
+    }
+
+    public void stop() {
+        mRunning = false;
+    }
+
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    /**
+     * Move to the last step due at now
+     * @return true if a frame is due, the clock having moved by a step at least
+     */
+    public boolean advance(long now) {
+        if (!mRunning || now < mNextStepTime) {
+            return false;
+        }
+
+        long steps = (now - mNextStepTime) / mTimeStep + 1;
+        mStep         += steps;
+        mNextStepTime += steps * mTimeStep;
+        mFrames++;
+        mSkippedFrames += steps - 1;
+        return true;
+    }
+
+    /**
+     * @return animation time in ms since start(), a whole number of steps
+     */
+    public long getTime() {
+        return Math.max(mStep, 0) * mTimeStep;
+    }
+
+    /**
+     * @return the uptime the next step is due at, in the time base of advance()
+     */
+    public long getNextStepTime() {
+        return mNextStepTime;
+    }
+
+    /**
+     * @return frames the animations were stepped for
+     */
+    public long getFrames() {
+        return mFrames;
+    }
+
+    /**
+     * @return steps jumped over because the driver thread was late
+     */
+    public long getSkippedFrames() {
+        return mSkippedFrames;
+    }
+}
@@ -0,0 +1,236 @@
+package com.cocoonshu.example.pilauncher;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Spoken announcements synthesized ahead of time.
+ * A phrase known in advance, a fixed message or the ones naming a paired
+ * device, is prepared once: the engine synthesizes it to a clip in the cache
+ * directory while nothing waits for it, and announcing it later plays the
+ * clip at once. A phrase without its clip is spoken live, as before. The
+ * clips are kept across runs and bounded by their total size, the least
+ * recently announced ones being deleted first, the order surviving a
+ * restart through the modification time of the files. The speech itself is
+ * behind an Engine, so the cache works the same with a fake one. Thread
+ * safe, the engine may report a synthesis from any thread.
+ * @Author Cocoonshu
+ * @Date 2017-05-27
+ */
+public class AnnouncementCache {
+    public static final long DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+
+    private static final String CLIP_SUFFIX    = ".wav";
+    private static final String PARTIAL_SUFFIX = ".part";
+
+    /**
+     * What speaks, the TextToSpeech engine on the device
+     */
+    public interface Engine {
+        interface Callback {
+            void onSynthesized(boolean success);
+        }
+
+        /**
+         * Speak the text, synthesizing it now, queued after what is being spoken
+         */
+        void speak(String text);
+
+        /**
+         * Play the clip of the text, queued after what is being spoken
+         */
+        void play(String text, File clip);
+
+        /**
+         * Start synthesizing the text to the file, the callback being called once it's done
+         * @return false if the synthesis couldn't be started, the callback then never being called
+         */
+        boolean synthesize(String text, File file, Callback callback);
+    }
+
+    private final Engine                      mEngine;
+    private final File                        mDirectory;
+    private final long                        mMaxBytes;
+    private final LinkedHashMap<String, File> mClips   = new LinkedHashMap<>(16, 0.75f, true);
+    private final HashSet<String>             mPending = new HashSet<>();
+    private long                              mBytes   = 0;
+    private long                              mHits    = 0;
+    private long                              mMisses  = 0;
+
+    /**
+     * @param directory where the clips are kept, the clips already there being reused
+     * @param maxBytes  total size of the clips kept
+     */
+    public AnnouncementCache(Engine engine, File directory, long maxBytes) {
+        mEngine    = engine;
+        mDirectory = directory;
+        mMaxBytes  = maxBytes;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return;
+        }
+
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        // Least recently announced first, as they are in the map
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File left, File right) {
+                long lhs = left.lastModified();
+                long rhs = right.lastModified();
+                return lhs < rhs ? -1 : (lhs == rhs ? 0 : 1);
+            }
+        });
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(CLIP_SUFFIX) && file.length() > 0) {
+                mClips.put(name.substring(0, name.length() - CLIP_SUFFIX.length()), file);
+                mBytes += file.length();
+            } else {
+                // A synthesis that never finished
+                file.delete();
+            }
+        }
+        trimInner();
+    }
+
+    /**
+     * Play the clip of the text if there is one, speak it live otherwise
+     * @return true if the clip was played
+     */
+    public boolean announce(String text) {
+        File clip;
+        synchronized (this) {
+            clip = mClips.get(keyOf(text));
+            if (clip != null) {
+                mHits++;
+            } else {
+                mMisses++;
+            }
+        }
+
+        if (clip != null) {
+            clip.setLastModified(System.currentTimeMillis());
+            mEngine.play(text, clip);
+            return true;
+        }
+        mEngine.speak(text);
+        return false;
+    }
+
+    /**
+     * Synthesize the clips of the texts not cached yet, in the background of the engine
+     */
+    public void prepare(String... texts) {
+        for (String text : texts) {
+            prepareInner(text);
+        }
+    }
+
+    public synchronized boolean contains(String text) {
+        return mClips.containsKey(keyOf(text));
+    }
+
+    /**
+     * Delete every clip, the syntheses under way still adding theirs
+     */
+    public synchronized void clear() {
+        for (File clip : mClips.values()) {
+            clip.delete();
+        }
+        mClips.clear();
+        mBytes = 0;
+    }
+
+    public synchronized int getClipCount() {
+        return mClips.size();
+    }
+
+    public synchronized long getSizeBytes() {
+        return mBytes;
+    }
+
+    public long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    public synchronized long getHits() {
+        return mHits;
+    }
+
+    public synchronized long getMisses() {
+        return mMisses;
+    }
+
+    private void prepareInner(String text) {
+        final String key = keyOf(text);
+        synchronized (this) {
+            if (mClips.containsKey(key) || !mPending.add(key)) {
+                return;
+            }
+        }
+
+        // Synthesized aside and renamed once complete, a clip is never played half written
+        final File partial = new File(mDirectory, key + PARTIAL_SUFFIX);
+        boolean started = mEngine.synthesize(text, partial, new Engine.Callback() {
+            @Override
+            public void onSynthesized(boolean success) {
+                onSynthesizedInner(key, partial, success);
+            }
+        });
+        if (!started) {
+            synchronized (this) {
+                mPending.remove(key);
+            }
+        }
+    }
+
+    private synchronized void onSynthesizedInner(String key, File partial, boolean success) {
+        mPending.remove(key);
+        File clip = new File(mDirectory, key + CLIP_SUFFIX);
+        if (!success || partial.length() == 0 || !partial.renameTo(clip)) {
+            partial.delete();
+            return;
+        }
+
+        mClips.put(key, clip);
+        mBytes += clip.length();
+        trimInner();
+    }
+
+    private void trimInner() {
+        Iterator<Map.Entry<String, File>> iterator = mClips.entrySet().iterator();
+        while (mBytes > mMaxBytes && iterator.hasNext()) {
+            File eldest = iterator.next().getValue();
+            mBytes -= eldest.length();
+            eldest.delete();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * @return the file name of the clip of a text, whatever characters the text has
+     */
+    private static String keyOf(String text) {
+        try {
+            byte[]        digest = MessageDigest.getInstance("SHA-1").digest(text.getBytes("UTF-8"));
+            StringBuilder key    = new StringBuilder(digest.length * 2);
+            for (byte value : digest) {
+                key.append(Character.forDigit((value >> 4) & 0xF, 16));
+                key.append(Character.forDigit(value & 0xF, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.cocoonshu.example.pilauncher;
+
+/**
+ * Horizontal progress or volume bar, an outline filled from the left in
+ * proportion to the value. A new value only redraws the bar when the fill
+ * moves by at least a pixel. animateTo() slides the fill to the new value
+ * instead, a redraw for each pixel it moves by.
+ * @Author Cocoonshu
+ * @Date 2017-05-23
+ */
+public class Bar extends Widget {
+    private volatile int   mValue = 0;
+    private volatile int   mMax   = 100;
+    private volatile int   mFill  = 0;
+    private volatile Tween mTween = null;
+
+    public Bar(int x, int y, int width, int height) {
+        super(x, y, width, height);
+    }
+
+    public void setValue(int value) {
+        setValue(value, mMax);
+    }
+
+    /**
+     * @param value clamped to 0..max
+     */
+    public synchronized void setValue(int value, int max) {
+        max   = Math.max(max, 1);
+        value = Math.max(0, Math.min(value, max));
+        mValue = value;
+        mMax   = max;
+        mTween = null;
+        int fill = getFill(value, max);
+        if (fill != mFill) {
+            mFill = fill;
+            invalidate();
+        }
+    }
+
+    /**
+     * Slide the fill from where it is to the value
+     * @param value    clamped to 0..max
+     * @param duration ms of animation time
+     */
+    public synchronized void animateTo(int value, int max, long duration) {
+        max   = Math.max(max, 1);
+        value = Math.max(0, Math.min(value, max));
+        mValue = value;
+        mMax   = max;
+        int fill = getFill(value, max);
+        Tween tween = mTween;
+        if (tween != null ? tween.getTo() == fill : fill == mFill) {
+            return;
+        }
+        mTween = new Tween(mFill, fill, duration, Tween.EASE_OUT);
+        startAnimation();
+    }
+
+    public int getValue() {
+        return mValue;
+    }
+
+    public int getMax() {
+        return mMax;
+    }
+
+    private int getFill(int value, int max) {
+        return (int) ((long) (mWidth - 4) * value / max);
+    }
+
+    @Override
+    public boolean isAnimating() {
+        return mTween != null;
+    }
+
+    @Override
+    public synchronized boolean animate(long time) {
+        Tween tween = mTween;
+        if (tween == null) {
+            return false;
+        }
+
+        int fill = tween.getValue(time);
+        if (fill != mFill) {
+            mFill = fill;
+            invalidate();
+        }
+        if (tween.isFinished(time)) {
+            mTween = null;
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    protected void onDraw(DrawContext context) {
+        FrameBuffer frame = context.frame;
+        frame.drawHLine(mX, mY, mWidth);
+        frame.drawHLine(mX, mY + mHeight - 1, mWidth);
+        frame.drawVLine(mX, mY, mHeight);
+        frame.drawVLine(mX + mWidth - 1, mY, mHeight);
+        int fill = mFill;
+        if (fill > 0) {
+            frame.fillRect(mX + 2, mY + 2, fill, mHeight - 4);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.cocoonshu.example.pilauncher;
+
+/**
+ * A Bluetooth broadcast reduced to what the BluetoothMonitor needs, parsed
+ * once by A2dpSinkHelper.parseEvent() on the thread receiving it.
+ * @Author Cocoonshu
+ * @Date 2017-05-25
+ */
+public final class BluetoothEvent {
+    public static final int TYPE_ADAPTER_STATE    = 0;
+    public static final int TYPE_CONNECTION_STATE = 1;
+    public static final int TYPE_PLAYING_STATE    = 2;
+
+    public final int    type;
+    public final int    previousState;
+    public final int    state;
+    public final String address;
+    public final String name;
+    public final long   time;
+
+    /**
+     * @param address remote device, null for the adapter events
+     * @param time    elapsedRealtime() of the broadcast
+     */
+    public BluetoothEvent(int type, int previousState, int state, String address, String name, long time) {
+        this.type          = type;
+        this.previousState = previousState;
+        this.state         = state;
+        this.address       = address;
+        this.name          = name;
+        this.time          = time;
+    }
+
+    @Override
+    public String toString() {
+        return "BluetoothEvent{type=" + type + ", " + previousState + " -> " + state
+                + (address != null ? ", " + address : "") + "}";
+    }
+}
@@ -0,0 +1,316 @@
+package com.cocoonshu.example.pilauncher;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothProfile;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Bluetooth adapter and A2DP sink state, kept off the main thread.
+ * The adapter, connection and playing broadcasts are received on a worker
+ * thread of the monitor, parsed into BluetoothEvents and applied to a table
+ * of the state of each device. A change opens a settle window for its
+ * device, the changes coming within it are merged and the listeners only
+ * hear about the device once the window closes, and only if its state then
+ * differs from what they heard last. A CONNECTING, CONNECTED, PLAYING burst
+ * is reported as one change, a connection dropping and coming back within
+ * the window isn't reported at all. Adapter state changes are reported at
+ * once. The listeners are called on the worker thread.
+ * @Author Cocoonshu
+ * @Date 2017-05-25
+ */
+public class BluetoothMonitor {
+    public static final long DEFAULT_SETTLE_MS = 300;
+
+    private static final String TAG = "BluetoothMonitor";
+
+    /**
+     * Called on the worker thread of the monitor
+     */
+    public interface Listener {
+        void onAdapterStateChanged(int previousState, int state);
+
+        /**
+         * @param previous the state last reported, with both states disconnected for a new device
+         */
+        void onDeviceChanged(DeviceState previous, DeviceState current);
+    }
+
+    /**
+     * A row of the device table, immutable
+     */
+    public static final class DeviceState {
+        public final String address;
+        public final String name;
+        public final int    connectionState;
+        public final int    playingState;
+        public final long   lastChange;
+
+        DeviceState(String address, String name, int connectionState, int playingState, long lastChange) {
+            this.address         = address;
+            this.name            = name;
+            this.connectionState = connectionState;
+            this.playingState    = playingState;
+            this.lastChange      = lastChange;
+        }
+
+        public boolean isConnected() {
+            return connectionState == BluetoothProfile.STATE_CONNECTED;
+        }
+
+        public boolean isPlaying() {
+            return playingState == A2dpSinkHelper.STATE_PLAYING;
+        }
+
+        boolean sameStateAs(DeviceState other) {
+            return connectionState == other.connectionState && playingState == other.playingState;
+        }
+
+        @Override
+        public String toString() {
+            return address + " " + name + " connection=" + connectionState + " playing=" + playingState;
+        }
+    }
+
+    /**
+     * The state of a device being merged, and the one its listeners heard last
+     */
+    private final class DeviceRecord implements Runnable {
+        DeviceState current;
+        DeviceState published;
+        boolean     pending = false;
+
+        @Override
+        public void run() {
+            publishInner(this);
+        }
+    }
+
+    private final Context                        mContext;
+    private final CopyOnWriteArrayList<Listener> mListeners    = new CopyOnWriteArrayList<>();
+    private final HashMap<String, DeviceRecord>  mDevices      = new HashMap<>();
+    private volatile long                        mSettle       = DEFAULT_SETTLE_MS;
+    private volatile int                         mAdapterState = BluetoothAdapter.STATE_OFF;
+    private volatile long                        mEvents       = 0;
+    private volatile long                        mPublished    = 0;
+    private HandlerThread                        mThread       = null;
+    private volatile Handler                     mHandler      = null;
+
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            BluetoothEvent event = A2dpSinkHelper.parseEvent(intent, SystemClock.elapsedRealtime());
+            if (event != null) {
+                onEventInner(event);
+            }
+        }
+    };
+
+    public BluetoothMonitor(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    public void start() {
+        if (mThread != null) {
+            return;
+        }
+
+        mThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+        BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+        mAdapterState = adapter != null ? adapter.getState() : BluetoothAdapter.STATE_OFF;
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(BluetoothAdapter.ACTION_STATE_CHANGED);
+        filter.addAction(A2dpSinkHelper.ACTION_CONNECTION_STATE_CHANGED);
+        filter.addAction(A2dpSinkHelper.ACTION_PLAYING_STATE_CHANGED);
+        mContext.registerReceiver(mReceiver, filter, null, mHandler);
+        Log.i(TAG, "[start]");
+    }
+
+    public void stop() {
+        if (mThread == null) {
+            return;
+        }
+
+        mContext.unregisterReceiver(mReceiver);
+        mHandler.removeCallbacksAndMessages(null);
+        mHandler = null;
+        mThread.quitSafely();
+        mThread = null;
+        Log.i(TAG, "[stop]");
+    }
+
+    /**
+     * Feed an event as if it had been broadcast, from any thread
+     */
+    public void post(final BluetoothEvent event) {
+        Handler handler = mHandler;
+        if (handler != null) {
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onEventInner(event);
+                }
+            });
+        }
+    }
+
+    /**
+     * @param settleMillis time the changes of a device are merged over before being reported
+     */
+    public void setSettleTime(long settleMillis) {
+        mSettle = settleMillis;
+    }
+
+    public int getAdapterState() {
+        return mAdapterState;
+    }
+
+    /**
+     * @return the current state of every device seen, from any thread
+     */
+    public List<DeviceState> getDevices() {
+        synchronized (mDevices) {
+            ArrayList<DeviceState> devices = new ArrayList<>(mDevices.size());
+            for (DeviceRecord record : mDevices.values()) {
+                devices.add(record.current);
+            }
+            return devices;
+        }
+    }
+
+    /**
+     * @return the current state of a device, null if it was never seen
+     */
+    public DeviceState getDevice(String address) {
+        synchronized (mDevices) {
+            DeviceRecord record = mDevices.get(address);
+            return record != null ? record.current : null;
+        }
+    }
+
+    /**
+     * @return events received
+     */
+    public long getReceivedEvents() {
+        return mEvents;
+    }
+
+    /**
+     * @return device changes reported to the listeners, after merging
+     */
+    public long getReportedChanges() {
+        return mPublished;
+    }
+
+    private void onEventInner(BluetoothEvent event) {
+        mEvents++;
+        Log.d(TAG, "[onEventInner] " + event);
+        if (event.type == BluetoothEvent.TYPE_ADAPTER_STATE) {
+            int previous = mAdapterState;
+            mAdapterState = event.state;
+            if (event.state != BluetoothAdapter.STATE_ON) {
+                // The devices go with the adapter, without their own broadcasts
+                disconnectAllInner(event.time);
+            }
+            for (Listener listener : mListeners) {
+                listener.onAdapterStateChanged(previous, event.state);
+            }
+            return;
+        }
+
+        DeviceRecord record;
+        synchronized (mDevices) {
+            record = mDevices.get(event.address);
+            if (record == null) {
+                record = new DeviceRecord();
+                record.current = new DeviceState(event.address, event.name,
+                        BluetoothProfile.STATE_DISCONNECTED, A2dpSinkHelper.STATE_NOT_PLAYING, event.time);
+                record.published = record.current;
+                mDevices.put(event.address, record);
+            }
+
+            DeviceState current = record.current;
+            String name = event.name != null ? event.name : current.name;
+            if (event.type == BluetoothEvent.TYPE_CONNECTION_STATE) {
+                // A device not connected any more doesn't play either
+                int playing = event.state == BluetoothProfile.STATE_CONNECTED
+                        ? current.playingState : A2dpSinkHelper.STATE_NOT_PLAYING;
+                record.current = new DeviceState(event.address, name, event.state, playing, event.time);
+            } else {
+                record.current = new DeviceState(event.address, name, current.connectionState, event.state, event.time);
+            }
+        }
+        scheduleInner(record);
+    }
+
+    private void disconnectAllInner(long time) {
+        ArrayList<DeviceRecord> changed = new ArrayList<>();
+        synchronized (mDevices) {
+            for (DeviceRecord record : mDevices.values()) {
+                DeviceState current = record.current;
+                if (current.connectionState != BluetoothProfile.STATE_DISCONNECTED) {
+                    record.current = new DeviceState(current.address, current.name,
+                            BluetoothProfile.STATE_DISCONNECTED, A2dpSinkHelper.STATE_NOT_PLAYING, time);
+                    changed.add(record);
+                }
+            }
+        }
+        for (int i = 0; i < changed.size(); i++) {
+            scheduleInner(changed.get(i));
+        }
+    }
+
+    /**
+     * Open the settle window of a device, a window already open takes the change in
+     */
+    private void scheduleInner(DeviceRecord record) {
+        Handler handler = mHandler;
+        if (record.pending || handler == null) {
+            return;
+        }
+        record.pending = true;
+        handler.postDelayed(record, mSettle);
+    }
+
+    private void publishInner(DeviceRecord record) {
+        record.pending = false;
+        DeviceState previous = record.published;
+        DeviceState current;
+        synchronized (mDevices) {
+            current = record.current;
+        }
+        if (current.sameStateAs(previous)) {
+            return;
+        }
+
+        record.published = current;
+        mPublished++;
+        Log.i(TAG, "[publishInner] " + current);
+        for (Listener listener : mListeners) {
+            listener.onDeviceChanged(previous, current);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.cocoonshu.example.pilauncher;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Serializes the transfers of all the panels sharing one SPI controller.
+ * Every transfer runs on the single thread of the arbiter, so the chip select
+ * cycles of different panels never overlap, and a panel asks for a turn
+ * instead of writing from its own thread. Turns go to the waiting panels by
+ * stride scheduling: each turn moves a panel forward by the inverse of its
+ * priority and the panel furthest behind goes next. Panels of equal priority
+ * alternate and a panel of priority 2 gets twice the turns of one of priority
+ * 1 while both have frames to send, without ever starving the latter.
+ * @Author Cocoonshu
+ * @Date 2017-05-20
+ */
+public class BusArbiter {
+    public static final int PRIORITY_LOW    = 1;
+    public static final int PRIORITY_NORMAL = 2;
+    public static final int PRIORITY_HIGH   = 4;
+
+    private static final String TAG         = "BusArbiter";
+    private static final int    MSG_SERVICE = 0;
+    private static final long   STRIDE_BASE = 1 << 20;
+
+    private static final HashMap<String, BusArbiter> sArbiters = new HashMap<>();
+
+    /**
+     * A panel on the bus, onTransfer() runs on the arbiter thread
+     */
+    public interface Client {
+        void onTransfer();
+    }
+
+    private static final class Slot {
+        final Client        client;
+        final AtomicBoolean pending = new AtomicBoolean(false);
+        volatile long       stride;
+        long                pass;
+        volatile long       transfers;
+
+        Slot(Client client, int priority) {
+            this.client = client;
+            setPriority(priority);
+        }
+
+        void setPriority(int priority) {
+            stride = STRIDE_BASE / Math.max(priority, 1);
+        }
+    }
+
+    private final String                     mName;
+    private final CopyOnWriteArrayList<Slot> mSlots         = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean              mServicePosted = new AtomicBoolean(false);
+    private final Object                     mTransferLock  = new Object();
+    private HandlerThread                    mThread        = null;
+    private volatile Handler                 mHandler       = null;
+    private long                             mVirtualTime   = 0;
+
+    public BusArbiter(String name) {
+        mName = name;
+    }
+
+    /**
+     * @param device SPI device name like "SPI0.0", the devices of one controller share an arbiter
+     * @return the arbiter of the controller of device
+     */
+    public static BusArbiter forBus(String device) {
+        int    separator  = device.indexOf('.');
+        String controller = separator >= 0 ? device.substring(0, separator) : device;
+        synchronized (sArbiters) {
+            BusArbiter arbiter = sArbiters.get(controller);
+            if (arbiter == null) {
+                arbiter = new BusArbiter(controller);
+                sArbiters.put(controller, arbiter);
+            }
+            return arbiter;
+        }
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Add a client, the arbiter thread starts with the first one
+     */
+    public synchronized void register(Client client, int priority) {
+        if (findSlot(client) != null) {
+            setPriority(client, priority);
+            return;
+        }
+
+        mSlots.add(new Slot(client, priority));
+        if (mThread == null) {
+            // Same priority as the driver threads, which it moves the frames of onto the wire
+            mThread = new HandlerThread(mName + "_BusThread", Process.THREAD_PRIORITY_URGENT_DISPLAY);
+            mThread.start();
+            mHandler = new Handler(mThread.getLooper()) {
+                @Override
+                public void handleMessage(Message msg) {
+                    if (msg.what == MSG_SERVICE) {
+                        serviceInner();
+                    }
+                }
+            };
+            Log.i(TAG, "[register] " + mName + " started");
+        }
+    }
+
+    /**
+     * Remove a client, the arbiter thread stops with the last one. Returns
+     * once a transfer of the client under way has ended, so the caller may
+     * close the bus of the client right after.
+     */
+    public void unregister(Client client) {
+        synchronized (this) {
+            Slot slot = findSlot(client);
+            if (slot == null) {
+                return;
+            }
+
+            mSlots.remove(slot);
+            if (mSlots.isEmpty() && mThread != null) {
+                mHandler = null;
+                mThread.quitSafely();
+                mThread = null;
+                mServicePosted.set(false);
+                Log.i(TAG, "[unregister] " + mName + " stopped");
+            }
+        }
+        synchronized (mTransferLock) {
+            // Nothing to do, a transfer in onTransfer() holds the lock until it's done
+        }
+    }
+
+    public void setPriority(Client client, int priority) {
+        Slot slot = findSlot(client);
+        if (slot != null) {
+            slot.setPriority(priority);
+        }
+    }
+
+    /**
+     * Ask for a turn on the bus, merged with a request not served yet. Lock free,
+     * callable from any thread.
+     */
+    public void requestTransfer(Client client) {
+        Slot slot = findSlot(client);
+        if (slot == null || slot.pending.getAndSet(true)) {
+            return;
+        }
+        postService();
+    }
+
+    /**
+     * @return the turns client got on the bus
+     */
+    public long getTransfers(Client client) {
+        Slot slot = findSlot(client);
+        return slot != null ? slot.transfers : 0;
+    }
+
+    private Slot findSlot(Client client) {
+        for (int i = 0; i < mSlots.size(); i++) {
+            Slot slot = mSlots.get(i);
+            if (slot.client == client) {
+                return slot;
+            }
+        }
+        return null;
+    }
+
+    private void postService() {
+        Handler handler = mHandler;
+        if (handler != null && !mServicePosted.getAndSet(true)) {
+            handler.sendEmptyMessage(MSG_SERVICE);
+        }
+    }
+
+    /**
+     * One turn per message, so the clients asking meanwhile compete for the next one
+     */
+    private void serviceInner() {
+        mServicePosted.set(false);
+        Slot next = null;
+        for (int i = 0; i < mSlots.size(); i++) {
+            Slot slot = mSlots.get(i);
+            if (!slot.pending.get()) {
+                continue;
+            }
+            // A client back from idle starts at the current time, it doesn't
+            // get to spend the turns it didn't need
+            if (slot.pass < mVirtualTime) {
+                slot.pass = mVirtualTime;
+            }
+            if (next == null || slot.pass < next.pass) {
+                next = slot;
+            }
+        }
+        if (next == null) {
+            return;
+        }
+
+        mVirtualTime = next.pass;
+        next.pass += next.stride;
+        next.pending.set(false);
+        synchronized (mTransferLock) {
+            // Unless unregistered since, its bus may be closing
+            if (mSlots.contains(next)) {
+                next.transfers++;
+                next.client.onTransfer();
+            }
+        }
+
+        for (int i = 0; i < mSlots.size(); i++) {
+            if (mSlots.get(i).pending.get()) {
+                postService();
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.cocoonshu.example.pilauncher;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.android.things.pio.Gpio;
+import com.google.android.things.pio.GpioCallback;
+import com.google.android.things.pio.PeripheralManagerService;
+
+import java.io.IOException;
+
+/**
+ * Push button on a GPIO, read without the input framework so each event
+ * keeps the time of its GPIO edge. The edges are taken on a thread of the
+ * button and timestamped first thing, then debounced on the leading edge:
+ * a change of level is reported at once and the edges following it within
+ * the debounce delay are taken for bounces, the level being read again once
+ * the delay is over. Debouncing so adds nothing to the latency of a press.
+ * Holding the button for the long press timeout reports a long press, timed
+ * from the timeout as that is when it happens, and the release after it
+ * says so. The listener is called through the Handler given, with the
+ * InputLatency, when set, timing the dispatch and the handling of each
+ * event. Closing the button drops the events not delivered yet.
+ * @Author Cocoonshu
+ * @Date 2017-05-31
+ */
+public class ButtonInput {
+    public static final long DEFAULT_DEBOUNCE_MS   = 20;
+    public static final long DEFAULT_LONG_PRESS_MS = 500;
+
+    private static final String TAG = "ButtonInput";
+
+    /**
+     * Called through the Handler of the button, edge times in ns of SystemClock.elapsedRealtimeNanos()
+     */
+    public interface Listener {
+        void onButtonDown(long edgeNanos);
+
+        /**
+         * @param eventNanos time the press became a long press, at the timeout
+         */
+        void onButtonLongPress(long eventNanos);
+
+        /**
+         * @param longPress true if onButtonLongPress() was called for this press
+         */
+        void onButtonUp(long edgeNanos, boolean longPress);
+    }
+
+    private static final int EVENT_DOWN       = 0;
+    private static final int EVENT_LONG_PRESS = 1;
+    private static final int EVENT_UP         = 2;
+
+    private final String             mPin;
+    private final boolean            mActiveHigh;
+    private final Listener           mListener;
+    private final Handler            mListenerHandler;
+    private volatile InputLatency    mLatency     = null;
+    private volatile long            mDebounceMs  = DEFAULT_DEBOUNCE_MS;
+    private volatile long            mLongPressMs = DEFAULT_LONG_PRESS_MS;
+    private PeripheralManagerService mPeripheral  = null;
+    private Gpio                     mGpio        = null;
+    private HandlerThread            mThread      = null;
+    private Handler                  mHandler     = null;
+    private boolean                  mPressed     = false;
+    private boolean                  mLongPressed = false;
+    private long                     mLastChange  = Long.MIN_VALUE / 2;
+
+    private final GpioCallback mEdgeCallback = new GpioCallback() {
+        @Override
+        public boolean onGpioEdge(Gpio gpio) {
+            onEdgeInner(SystemClock.elapsedRealtimeNanos());
+            return true;
+        }
+
+        @Override
+        public void onGpioError(Gpio gpio, int error) {
+            Log.w(TAG, "[onGpioError] " + gpio.getName() + " error " + error);
+        }
+    };
+
+    private final Runnable mSettleCheck = new Runnable() {
+        @Override
+        public void run() {
+            // The level the bounces left the line at
+            onLevelInner(SystemClock.elapsedRealtimeNanos(), true);
+        }
+    };
+
+    private final Runnable mLongPressCheck = new Runnable() {
+        @Override
+        public void run() {
+            if (mPressed && !mLongPressed) {
+                mLongPressed = true;
+                dispatch(EVENT_LONG_PRESS, SystemClock.elapsedRealtimeNanos(), true);
+            }
+        }
+    };
+
+    /**
+     * @param activeHigh true if the line is high while the button is pressed
+     * @param handler    where the listener is called, the main thread one usually
+     */
+    public ButtonInput(String pin, boolean activeHigh, Listener listener, Handler handler) {
+        mPin             = pin;
+        mActiveHigh      = activeHigh;
+        mListener        = listener;
+        mListenerHandler = handler;
+    }
+
+    /**
+     * @param latency where the dispatch and the handling of the events are timed, null for nowhere
+     */
+    public void setLatency(InputLatency latency) {
+        mLatency = latency;
+    }
+
+    public void setDebounceDelay(long millis) {
+        mDebounceMs = Math.max(millis, 0);
+    }
+
+    public void setLongPressTimeout(long millis) {
+        mLongPressMs = Math.max(millis, 0);
+    }
+
+    public void open() throws IOException {
+        close();
+        if (mPeripheral == null) {
+            mPeripheral = new PeripheralManagerService();
+        }
+
+        // Edges are taken ahead of the rendering threads, a press being timed from them
+        mThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_URGENT_DISPLAY);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+        mPressed = false;
+        mLongPressed = false;
+        mLastChange = Long.MIN_VALUE / 2;
+        mGpio = mPeripheral.openGpio(mPin);
+        mGpio.setDirection(Gpio.DIRECTION_IN);
+        mGpio.setActiveType(mActiveHigh ? Gpio.ACTIVE_HIGH : Gpio.ACTIVE_LOW);
+        mGpio.setEdgeTriggerType(Gpio.EDGE_BOTH);
+        mGpio.registerGpioCallback(mEdgeCallback, mHandler);
+    }
+
+    public void close() {
+        if (mGpio != null) {
+            mGpio.unregisterGpioCallback(mEdgeCallback);
+            try {
+                mGpio.close();
+            } catch (IOException exp) {
+                // Ignore
+            }
+            mGpio = null;
+        }
+        // Events posted but not delivered yet, their runnables posted with this as token
+        mListenerHandler.removeCallbacksAndMessages(this);
+        if (mThread != null) {
+            mHandler.removeCallbacksAndMessages(null);
+            mThread.quitSafely();
+            mThread = null;
+            mHandler = null;
+        }
+    }
+
+    private void onEdgeInner(long edgeNanos) {
+        long now = SystemClock.uptimeMillis();
+        if (now - mLastChange < mDebounceMs) {
+            // A bounce, the level is read again when the delay is over
+            return;
+        }
+        onLevelInner(edgeNanos, false);
+    }
+
+    private void onLevelInner(long edgeNanos, boolean settled) {
+        boolean pressed;
+        try {
+            pressed = mGpio != null && mGpio.getValue();
+        } catch (IOException exp) {
+            return;
+        }
+        if (pressed == mPressed) {
+            return;
+        }
+
+        mPressed = pressed;
+        mLastChange = SystemClock.uptimeMillis();
+        mHandler.removeCallbacks(mSettleCheck);
+        mHandler.postDelayed(mSettleCheck, mDebounceMs);
+        if (pressed) {
+            mLongPressed = false;
+            mHandler.postDelayed(mLongPressCheck, mLongPressMs);
+            dispatch(EVENT_DOWN, edgeNanos, false);
+        } else {
+            mHandler.removeCallbacks(mLongPressCheck);
+            dispatch(EVENT_UP, edgeNanos, mLongPressed);
+        }
+        if (settled) {
+            Log.i(TAG, "[onLevelInner] " + mPin + (pressed ? " pressed" : " released") + " after the bounces");
+        }
+    }
+
+    private void dispatch(final int event, final long eventNanos, final boolean longPress) {
+        mListenerHandler.postAtTime(new Runnable() {
+            @Override
+            public void run() {
+                InputLatency latency  = mLatency;
+                long         dispatch = SystemClock.elapsedRealtimeNanos();
+                switch (event) {
+                    case EVENT_DOWN:       { mListener.onButtonDown(eventNanos); } break;
+                    case EVENT_LONG_PRESS: { mListener.onButtonLongPress(eventNanos); } break;
+                    case EVENT_UP:         { mListener.onButtonUp(eventNanos, longPress); } break;
+                }
+                if (latency != null) {
+                    latency.onDispatched(eventNanos, dispatch);
+                    latency.onHandled(dispatch, SystemClock.elapsedRealtimeNanos());
+                }
+            }
+        }, this, SystemClock.uptimeMillis());
+    }
+}
@@ -0,0 +1,119 @@
+package com.cocoonshu.example.pilauncher;
+
+import java.io.IOException;
+
+/**
+ * Queue of panel commands and display data sent in one go.
+ * Consecutive bytes of the same DC phase are merged into a single SPI
+ * transfer and the chip select is held across the whole batch, so a
+ * sequence like the init commands costs one transfer instead of one per
+ * byte, and one pair of CS toggles instead of one per command.
+ * @Author Cocoonshu
+ * @Date 2017-05-14
+ */
+public class CommandBatch {
+    private final byte[]    mBytes;
+    private final byte[]    mScratch;
+    private final int[]     mSegmentStart;
+    private final boolean[] mSegmentData;
+    private int             mSegments = 0;
+    private int             mSize     = 0;
+
+    /**
+     * @param capacity maximum number of bytes, commands and data together
+     */
+    public CommandBatch(int capacity) {
+        mBytes        = new byte[capacity];
+        mScratch      = new byte[capacity];
+        mSegmentStart = new int[capacity + 1];
+        mSegmentData  = new boolean[capacity];
+    }
+
+    private void append(boolean data, byte value) {
+        ensureCapacity(data, 1);
+        mBytes[mSize++] = value;
+    }
+
+    private void ensureCapacity(boolean data, int length) {
+        if (mSize + length > mBytes.length) {
+            throw new IllegalStateException("Command batch overflow, " + (mSize + length) + " > " + mBytes.length);
+        }
+        if (mSegments == 0 || mSegmentData[mSegments - 1] != data) {
+            mSegmentStart[mSegments] = mSize;
+            mSegmentData[mSegments]  = data;
+            mSegments++;
+        }
+    }
+
+    public CommandBatch command(byte cmd) {
+        append(false, cmd);
+        return this;
+    }
+
+    public CommandBatch data(byte value) {
+        append(true, value);
+        return this;
+    }
+
+    public CommandBatch data(byte[] src, int offset, int length) {
+        if (length <= 0) {
+            return this;
+        }
+        ensureCapacity(true, length);
+        System.arraycopy(src, offset, mBytes, mSize, length);
+        mSize += length;
+        return this;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return the number of SPI transfers the batch will take
+     */
+    public int getTransferCount() {
+        return mSegments;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public void clear() {
+        mSize     = 0;
+        mSegments = 0;
+    }
+
+    /**
+     * Send the batch with the chip select held, one transfer per DC phase, then clear it
+     */
+    public void send(DisplayBus bus) throws IOException {
+        if (mSize == 0) {
+            return;
+        }
+
+        mSegmentStart[mSegments] = mSize;
+        try {
+            bus.setSelected(true);
+            for (int segment = 0; segment < mSegments; segment++) {
+                int start  = mSegmentStart[segment];
+                int length = mSegmentStart[segment + 1] - start;
+                byte[] bytes = mBytes;
+                if (start != 0) {
+                    System.arraycopy(mBytes, start, mScratch, 0, length);
+                    bytes = mScratch;
+                }
+                bus.setDataMode(mSegmentData[segment]);
+                bus.write(bytes, length);
+            }
+        } finally {
+            // A failed write must not leave the panel selected for the next transfer
+            try {
+                bus.setSelected(false);
+            } finally {
+                clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.cocoonshu.example.pilauncher;
+
+import java.io.IOException;
+
+/**
+ * Lines a SPI display driver needs to talk to its panel: a write only
+ * SPI device, the DC (data/command) and CS (chip select) GPIOs, plus the
+ * optional RST and backlight GPIOs. Backends without one of the optional
+ * lines just ignore it.
+ * @Author Cocoonshu
+ * @Date 2017-05-08
+ */
+public interface DisplayBus {
+
+    /**
+     * Open and configure the lines, fails when the bus cannot drive a panel
+     */
+    void open() throws IOException;
+
+    void close() throws IOException;
+
+    /**
+     * @param data true for display data, false for commands
+     */
+    void setDataMode(boolean data) throws IOException;
+
+    /**
+     * @param selected true to assert the chip select of the panel
+     */
+    void setSelected(boolean selected) throws IOException;
+
+    /**
+     * @param asserted true to hold the panel in reset
+     */
+    void setReset(boolean asserted) throws IOException;
+
+    void setBacklight(boolean on) throws IOException;
+
+    boolean isBacklightOn() throws IOException;
+
+    void write(byte[] buffer, int length) throws IOException;
+}
@@ -0,0 +1,323 @@
+package com.cocoonshu.example.pilauncher;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded queue of draw commands from any thread to the driver thread.
+ * The commands live in a ring of slots allocated once, a producer claims the
+ * slot at the tail with a compare and set and fills it in place, so offering
+ * neither allocates nor takes a lock. Each slot carries a sequence number
+ * telling whether it is free for the current lap, published, or held by
+ * someone rewriting or reading it (the ring of Vyukov's bounded queue).
+ * What a producer does when the ring is full is the policy:
+ * POLICY_BLOCK waits for the consumer to make room, POLICY_DROP_OLDEST
+ * throws the oldest command away, and POLICY_COALESCE merges the command
+ * into the newest queued one when it supersedes it, text drawn at the same
+ * place or a second clear in a row, only dropping the oldest otherwise.
+ * @Author Cocoonshu
+ * @Date 2017-05-22
+ */
+public class DrawCommandQueue {
+    public static final int POLICY_BLOCK       = 0;
+    public static final int POLICY_DROP_OLDEST = 1;
+    public static final int POLICY_COALESCE    = 2;
+
+    public static final int TYPE_CLEAR         = 0;
+    public static final int TYPE_DRAW_TEXT     = 1;
+    public static final int TYPE_DRAW_BITMAP   = 2;
+    public static final int TYPE_SCROLL_TEXT   = 3;
+    public static final int TYPE_STOP_SCROLL   = 4;
+    public static final int TYPE_TEST_LCD      = 5;
+    public static final int TYPE_SET_WIDGETS   = 6;
+
+    private static final long BUSY = -1;
+
+    /**
+     * One draw call, the meaning of the fields depends on the type
+     */
+    public static final class DrawCommand {
+        public int    type;
+        public int    x;
+        public int    y;
+        public int    width;
+        public int    arg;
+        public Object payload;
+        public long   enqueueTime;
+
+        void copyFrom(DrawCommand other) {
+            type        = other.type;
+            x           = other.x;
+            y           = other.y;
+            width       = other.width;
+            arg         = other.arg;
+            payload     = other.payload;
+            enqueueTime = other.enqueueTime;
+        }
+    }
+
+    private final DrawCommand[]   mSlots;
+    private final AtomicLongArray mSequences;
+    private final int             mMask;
+    private final AtomicLong      mHead      = new AtomicLong(0);
+    private final AtomicLong      mTail      = new AtomicLong(0);
+    private final AtomicLong      mDropped   = new AtomicLong(0);
+    private final AtomicLong      mCoalesced = new AtomicLong(0);
+    private final AtomicLong      mRejected  = new AtomicLong(0);
+    private final Object          mRoomLock  = new Object();
+    private volatile int          mWaiters   = 0;
+    private volatile int          mPolicy    = POLICY_COALESCE;
+    private volatile boolean      mClosed    = false;
+
+    /**
+     * @param capacity rounded up to a power of two
+     */
+    public DrawCommandQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        mSlots     = new DrawCommand[size];
+        mSequences = new AtomicLongArray(size);
+        mMask      = size - 1;
+        for (int i = 0; i < size; i++) {
+            mSlots[i] = new DrawCommand();
+            mSequences.set(i, i);
+        }
+    }
+
+    /**
+     * @param policy POLICY_BLOCK, POLICY_DROP_OLDEST or POLICY_COALESCE
+     */
+    public void setPolicy(int policy) {
+        mPolicy = policy;
+        wakeWaiters();
+    }
+
+    public int getPolicy() {
+        return mPolicy;
+    }
+
+    public int getCapacity() {
+        return mSlots.length;
+    }
+
+    /**
+     * Queue a command, from any thread
+     * @return false if the queue is closed, or was closed or the producer
+     *         interrupted while waiting for room
+     */
+    public boolean offer(int type, int x, int y, int width, int arg, Object payload) {
+        long now = System.nanoTime();
+        while (true) {
+            if (mClosed) {
+                mRejected.incrementAndGet();
+                return false;
+            }
+
+            long tail     = mTail.get();
+            int  index    = (int) (tail & mMask);
+            long sequence = mSequences.get(index);
+            if (sequence == tail) {
+                if (mTail.compareAndSet(tail, tail + 1)) {
+                    DrawCommand slot = mSlots[index];
+                    slot.type        = type;
+                    slot.x           = x;
+                    slot.y           = y;
+                    slot.width       = width;
+                    slot.arg         = arg;
+                    slot.payload     = payload;
+                    slot.enqueueTime = now;
+                    mSequences.set(index, tail + 1);
+                    return true;
+                }
+            } else if (sequence < tail) {
+                // The slot still holds the command of the previous lap, full
+                switch (mPolicy) {
+                    case POLICY_BLOCK: {
+                        if (!awaitRoom()) {
+                            mRejected.incrementAndGet();
+                            return false;
+                        }
+                    } break;
+                    case POLICY_COALESCE: {
+                        if (coalesce(type, x, y, width, arg, payload)) {
+                            mCoalesced.incrementAndGet();
+                            return true;
+                        }
+                        if (pollInner(null)) {
+                            mDropped.incrementAndGet();
+                        }
+                    } break;
+                    default: {
+                        if (pollInner(null)) {
+                            mDropped.incrementAndGet();
+                        }
+                    } break;
+                }
+            }
+            // Otherwise another producer took the slot, try the next one
+        }
+    }
+
+    /**
+     * Take the oldest command, driver thread only
+     * @param out receives the command, the slot being free again on return
+     * @return false if the queue is empty
+     */
+    public boolean poll(DrawCommand out) {
+        if (!pollInner(out)) {
+            return false;
+        }
+        if (mWaiters > 0) {
+            wakeWaiters();
+        }
+        return true;
+    }
+
+    /**
+     * Shared by the consumer and the producers dropping the oldest command,
+     * the head is claimed first, then the slot against a coalescing producer
+     */
+    private boolean pollInner(DrawCommand out) {
+        while (true) {
+            long head     = mHead.get();
+            int  index    = (int) (head & mMask);
+            long sequence = mSequences.get(index);
+            if (sequence == BUSY) {
+                continue;
+            }
+            if (sequence < head + 1) {
+                return false;
+            }
+            if (sequence == head + 1 && mHead.compareAndSet(head, head + 1)) {
+                while (!mSequences.compareAndSet(index, head + 1, BUSY)) {
+                    // A producer is merging its command into this one, a few stores
+                }
+                DrawCommand slot = mSlots[index];
+                if (out != null) {
+                    out.copyFrom(slot);
+                }
+                slot.payload = null;
+                mSequences.set(index, head + mSlots.length);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Merge into the newest queued command when it has the same effect on
+     * the frame. Nothing older is looked at, text queued after it could
+     * overlap the rectangle, and the merged command would be drawn under it.
+     */
+    private boolean coalesce(int type, int x, int y, int width, int arg, Object payload) {
+        long position = mTail.get() - 1;
+        if (position < mHead.get()) {
+            return false;
+        }
+
+        int  index    = (int) (position & mMask);
+        long sequence = mSequences.get(index);
+        if (sequence != position + 1) {
+            // Being read, already gone, or rewritten by another producer
+            return false;
+        }
+
+        DrawCommand slot = mSlots[index];
+        if (slot.type != type || !supersedes(slot, type, x, y, arg)) {
+            return false;
+        }
+        if (!mSequences.compareAndSet(index, position + 1, BUSY)) {
+            return false;
+        }
+        if (slot.type != type || !supersedes(slot, type, x, y, arg)) {
+            mSequences.set(index, position + 1);
+            return false;
+        }
+        // The enqueue time stays the one of the older command, the
+        // time this part of the frame has been waiting for
+        // A marquee supersedes the one of its row whatever its window
+        slot.x       = x;
+        slot.width   = width;
+        slot.arg     = arg;
+        slot.payload = payload;
+        mSequences.set(index, position + 1);
+        return true;
+    }
+
+    private static boolean supersedes(DrawCommand queued, int type, int x, int y, int arg) {
+        switch (type) {
+            case TYPE_DRAW_TEXT:   return queued.x == x && queued.y == y && queued.arg == arg;
+            case TYPE_SCROLL_TEXT: return queued.y == y;
+            default:               return queued.x == x && queued.y == y;
+        }
+    }
+
+    /**
+     * @return false if interrupted
+     */
+    private boolean awaitRoom() {
+        synchronized (mRoomLock) {
+            mWaiters++;
+            try {
+                while (!mClosed && mPolicy == POLICY_BLOCK && size() >= mSlots.length) {
+                    mRoomLock.wait();
+                }
+                return true;
+            } catch (InterruptedException exp) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                mWaiters--;
+            }
+        }
+    }
+
+    private void wakeWaiters() {
+        synchronized (mRoomLock) {
+            mRoomLock.notifyAll();
+        }
+    }
+
+    /**
+     * Refuse the commands offered from now on and release the producers
+     * waiting for room, the queued commands are dropped
+     */
+    public void close() {
+        mClosed = true;
+        while (pollInner(null)) {
+            // Drop
+        }
+        wakeWaiters();
+    }
+
+    public boolean isClosed() {
+        return mClosed;
+    }
+
+    /**
+     * @return commands waiting, may be off by the ones being offered or polled
+     */
+    public int size() {
+        long size = mTail.get() - mHead.get();
+        return (int) Math.max(0, Math.min(size, mSlots.length));
+    }
+
+    /**
+     * @return commands thrown away to make room
+     */
+    public long getDroppedCommands() {
+        return mDropped.get();
+    }
+
+    /**
+     * @return commands merged into one already queued
+     */
+    public long getCoalescedCommands() {
+        return mCoalesced.get();
+    }
+
+    /**
+     * @return commands offered after close()
+     */
+    public long getRejectedCommands() {
+        return mRejected.get();
+    }
+}
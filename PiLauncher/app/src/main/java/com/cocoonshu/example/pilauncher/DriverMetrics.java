@@ -0,0 +1,147 @@
+package com.cocoonshu.example.pilauncher;
+
+/**
+ * Counters of a display driver, updated on its threads without allocating
+ * and read from anywhere. The depth of the command queue is sampled as draw
+ * calls go in and out of it and their time from the queue to the frame goes
+ * to the enqueue-to-render histogram, frames are counted when they reach the bus and
+ * the time since they were rendered goes to the render-to-wire histogram.
+ * The bytes of the bitmap surface read back to pack drawBitmap() frames are
+ * counted as they are touched, written by the copy then read by the packer.
+ * A frame showing the change made for an input event has the time since
+ * the event go to the input-to-wire histogram.
+ * @Author Cocoonshu
+ * @Date 2017-05-21
+ */
+public class DriverMetrics {
+    private static final double NANOS_PER_SEC = 1e9;
+
+    private final LatencyHistogram mEnqueueToRender = new LatencyHistogram();
+    private final LatencyHistogram mRenderToWire    = new LatencyHistogram();
+    private final LatencyHistogram mInputToWire     = new LatencyHistogram();
+    private volatile int           mQueueDepth      = 0;
+    private volatile int           mMaxQueueDepth   = 0;
+    private volatile long          mFramesSent      = 0;
+    private volatile long          mSurfaceFrames   = 0;
+    private volatile long          mSurfaceBytes    = 0;
+    private long                   mStartTime       = 0;
+    private long                   mWindowStart     = 0;
+    private long                   mWindowFrames    = 0;
+
+    /**
+     * Clear everything, the rates being measured from now
+     */
+    public synchronized void reset(long nowNanos) {
+        mEnqueueToRender.reset();
+        mRenderToWire.reset();
+        mInputToWire.reset();
+        mQueueDepth    = 0;
+        mMaxQueueDepth = 0;
+        mFramesSent    = 0;
+        mSurfaceFrames = 0;
+        mSurfaceBytes  = 0;
+        mStartTime     = nowNanos;
+        mWindowStart   = nowNanos;
+        mWindowFrames  = 0;
+    }
+
+    /**
+     * A draw call entered the queue, any thread
+     * @param depth commands in the queue after it
+     */
+    public void onEnqueued(int depth) {
+        mQueueDepth = depth;
+        if (depth > mMaxQueueDepth) {
+            mMaxQueueDepth = depth;
+        }
+    }
+
+    /**
+     * A draw call left the queue and was rendered, driver thread only
+     * @param depth commands left in the queue
+     */
+    public void onRendered(long waitMicros, int depth) {
+        mQueueDepth = depth;
+        mEnqueueToRender.record(waitMicros);
+    }
+
+    /**
+     * A frame went out on the bus, bus thread only
+     */
+    public void onFrameSent(long sinceRenderMicros) {
+        mRenderToWire.record(sinceRenderMicros);
+        mFramesSent++;
+    }
+
+    /**
+     * A frame showing the change made for an input event went out on the bus, bus thread only
+     */
+    public void onInputShown(long sinceInputMicros) {
+        mInputToWire.record(sinceInputMicros);
+    }
+
+    /**
+     * The bitmap surface was read back into a frame, driver thread only
+     * @param bytesTouched bytes written and read between the surface and the frame
+     */
+    public void onSurfaceRead(int bytesTouched) {
+        mSurfaceBytes += bytesTouched;
+        mSurfaceFrames++;
+    }
+
+    public int getQueueDepth() {
+        return mQueueDepth;
+    }
+
+    public int getMaxQueueDepth() {
+        return mMaxQueueDepth;
+    }
+
+    public long getFramesSent() {
+        return mFramesSent;
+    }
+
+    public long getSurfaceFrames() {
+        return mSurfaceFrames;
+    }
+
+    /**
+     * @return bytes touched reading the surface back, per frame read
+     */
+    public long getSurfaceBytesPerFrame() {
+        long frames = mSurfaceFrames;
+        return frames > 0 ? mSurfaceBytes / frames : 0;
+    }
+
+    public LatencyHistogram getEnqueueToRender() {
+        return mEnqueueToRender;
+    }
+
+    public LatencyHistogram getRenderToWire() {
+        return mRenderToWire;
+    }
+
+    public LatencyHistogram getInputToWire() {
+        return mInputToWire;
+    }
+
+    /**
+     * @return frames/sec sent since the previous call, the first call measuring from reset()
+     */
+    public synchronized double sampleFramesPerSecond(long nowNanos) {
+        long frames  = mFramesSent;
+        long elapsed = nowNanos - mWindowStart;
+        double fps   = elapsed > 0 ? (frames - mWindowFrames) * NANOS_PER_SEC / elapsed : 0;
+        mWindowStart  = nowNanos;
+        mWindowFrames = frames;
+        return fps;
+    }
+
+    /**
+     * @return frames/sec sent since reset()
+     */
+    public synchronized double getAverageFramesPerSecond(long nowNanos) {
+        long elapsed = nowNanos - mStartTime;
+        return elapsed > 0 ? mFramesSent * NANOS_PER_SEC / elapsed : 0;
+    }
+}
@@ -0,0 +1,347 @@
+package com.cocoonshu.example.pilauncher;
+
+import java.util.Arrays;
+
+/**
+ * 1-bpp frame buffer in PCD8544 bank layout.
+ * The frame is split in banks of 8 rows, each bank holds one byte per column
+ * and bit n of a byte is row n of its bank, so getBytes() can be sent to the
+ * panel as it is in horizontal addressing mode. Drawing only touches the bytes
+ * covered by the operation, masking the partial banks on top and bottom.
+ * @Author Cocoonshu
+ * @Date 2017-05-04
+ */
+public class FrameBuffer {
+    public static final int OP_SET   = 0;
+    public static final int OP_CLEAR = 1;
+    public static final int OP_XOR   = 2;
+    public static final int OP_COPY  = 3;
+
+    private static final int BitPerBank = 8;
+
+    private final int    mWidth;
+    private final int    mHeight;
+    private final int    mBanks;
+    private final byte[] mBytes;
+
+    public FrameBuffer(int width, int height) {
+        if (width <= 0 || height <= 0 || height % BitPerBank != 0) {
+            throw new IllegalArgumentException("Invalid frame size " + width + "x" + height);
+        }
+        mWidth  = width;
+        mHeight = height;
+        mBanks  = height / BitPerBank;
+        mBytes  = new byte[mWidth * mBanks];
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getBanks() {
+        return mBanks;
+    }
+
+    /**
+     * @return the backing bytes, bank after bank
+     */
+    public byte[] getBytes() {
+        return mBytes;
+    }
+
+    public void clear() {
+        Arrays.fill(mBytes, (byte) 0x00);
+    }
+
+    public void fill(byte pattern) {
+        Arrays.fill(mBytes, pattern);
+    }
+
+    public void copyFrom(FrameBuffer other) {
+        System.arraycopy(other.mBytes, 0, mBytes, 0, mBytes.length);
+    }
+
+    public boolean getPixel(int x, int y) {
+        if (x < 0 || x >= mWidth || y < 0 || y >= mHeight) {
+            return false;
+        }
+        return (mBytes[(y >> 3) * mWidth + x] & (1 << (y & 7))) != 0;
+    }
+
+    public void setPixel(int x, int y, boolean on) {
+        if (x < 0 || x >= mWidth || y < 0 || y >= mHeight) {
+            return;
+        }
+        int index = (y >> 3) * mWidth + x;
+        if (on) {
+            mBytes[index] |= 1 << (y & 7);
+        } else {
+            mBytes[index] &= ~(1 << (y & 7));
+        }
+    }
+
+    public void fillRect(int x, int y, int width, int height) {
+        applyRect(x, y, width, height, OP_SET);
+    }
+
+    public void clearRect(int x, int y, int width, int height) {
+        applyRect(x, y, width, height, OP_CLEAR);
+    }
+
+    public void invertRect(int x, int y, int width, int height) {
+        applyRect(x, y, width, height, OP_XOR);
+    }
+
+    public void drawHLine(int x, int y, int width) {
+        applyRect(x, y, width, 1, OP_SET);
+    }
+
+    public void drawVLine(int x, int y, int height) {
+        applyRect(x, y, 1, height, OP_SET);
+    }
+
+    /**
+     * Apply op to every pixel of a rect, one bank mask per bank
+     */
+    public void applyRect(int x, int y, int width, int height, int op) {
+        int left   = Math.max(x, 0);
+        int top    = Math.max(y, 0);
+        int right  = Math.min(x + width, mWidth);
+        int bottom = Math.min(y + height, mHeight);
+        if (left >= right || top >= bottom) {
+            return;
+        }
+
+        int firstBank = top >> 3;
+        int lastBank  = (bottom - 1) >> 3;
+        for (int bank = firstBank; bank <= lastBank; bank++) {
+            int mask = 0xFF;
+            if (bank == firstBank) {
+                mask &= 0xFF << (top & 7);
+            }
+            if (bank == lastBank) {
+                mask &= 0xFF >>> (7 - ((bottom - 1) & 7));
+            }
+            applyMask(bank * mWidth + left, right - left, mask, op);
+        }
+    }
+
+    private void applyMask(int offset, int length, int mask, int op) {
+        int end = offset + length;
+        switch (op) {
+            case OP_SET: {
+                if (mask == 0xFF) {
+                    Arrays.fill(mBytes, offset, end, (byte) 0xFF);
+                } else {
+                    for (int i = offset; i < end; i++) mBytes[i] |= mask;
+                }
+            } break;
+            case OP_CLEAR: {
+                if (mask == 0xFF) {
+                    Arrays.fill(mBytes, offset, end, (byte) 0x00);
+                } else {
+                    for (int i = offset; i < end; i++) mBytes[i] &= ~mask;
+                }
+            } break;
+            case OP_XOR: {
+                for (int i = offset; i < end; i++) mBytes[i] ^= mask;
+            } break;
+        }
+    }
+
+    /**
+     * OR, clear or XOR a column strip of up to 64 rows, bit n of bits being row y + n
+     */
+    public void applyColumn(int x, int y, long bits, int op) {
+        if (x < 0 || x >= mWidth || bits == 0 || y >= mHeight || y <= -Long.SIZE) {
+            return;
+        }
+        bits = y >= 0 ? bits << y : bits >>> -y;
+        for (int bank = 0; bank < mBanks && bits != 0; bank++, bits >>>= BitPerBank) {
+            int word = (int) bits & 0xFF;
+            if (word != 0) {
+                applyMask(bank * mWidth + x, 1, word, op);
+            }
+        }
+    }
+
+    /**
+     * Blit a packed sprite stored in the same bank layout.
+     * @param sprite       sprite bytes, bank after bank
+     * @param spriteWidth  sprite width in pixels, also the number of bytes per bank
+     * @param spriteHeight sprite height in pixels
+     * @param op           OP_SET ORs the sprite, OP_CLEAR erases its set pixels,
+     *                     OP_XOR inverts under them, OP_COPY replaces the covered rect
+     */
+    public void blit(byte[] sprite, int spriteWidth, int spriteHeight, int x, int y, int op) {
+        blit(sprite, spriteWidth, spriteHeight, 0, spriteWidth, x, y, op);
+    }
+
+    /**
+     * Blit the columns srcX to srcX + srcWidth of a packed sprite, column srcX landing at x
+     */
+    public void blit(byte[] sprite, int spriteWidth, int spriteHeight, int srcX, int srcWidth, int x, int y, int op) {
+        int from = Math.max(srcX, 0);
+        int to   = Math.min(srcX + srcWidth, spriteWidth);
+        if (from >= to) {
+            return;
+        }
+        x += from - srcX;
+        if (op == OP_COPY) {
+            clearRect(x, y, to - from, spriteHeight);
+            op = OP_SET;
+        }
+
+        int spriteBanks = (spriteHeight + BitPerBank - 1) / BitPerBank;
+        int shift       = y & 7;
+        int firstBank   = y >> 3;
+        if (shift == 0) {
+            blitAligned(sprite, spriteWidth, spriteHeight, spriteBanks, from, to - from, x, firstBank, op);
+            return;
+        }
+        for (int sbank = 0; sbank < spriteBanks; sbank++) {
+            int rows      = Math.min(spriteHeight - sbank * BitPerBank, BitPerBank);
+            int rowMask   = 0xFF >>> (BitPerBank - rows);
+            int lowBank   = firstBank + sbank;
+            int highBank  = lowBank + 1;
+            for (int column = from; column < to; column++) {
+                int px = x + column - from;
+                if (px < 0 || px >= mWidth) {
+                    continue;
+                }
+                int word = (sprite[sbank * spriteWidth + column] & rowMask) << shift;
+                if (word == 0) {
+                    continue;
+                }
+                if (lowBank >= 0 && lowBank < mBanks && (word & 0xFF) != 0) {
+                    applyMask(lowBank * mWidth + px, 1, word & 0xFF, op);
+                }
+                if (highBank >= 0 && highBank < mBanks && (word >>> BitPerBank) != 0) {
+                    applyMask(highBank * mWidth + px, 1, word >>> BitPerBank, op);
+                }
+            }
+        }
+    }
+
+    /**
+     * Blit the rows srcY to srcY + rows of the columns srcX to srcX + srcWidth of a packed sprite,
+     * row srcY landing at y and column srcX at x. At most 64 rows past the bank srcY starts in.
+     */
+    public void blit(byte[] sprite, int spriteWidth, int srcY, int rows, int srcX, int srcWidth, int x, int y, int op) {
+        if (srcY <= 0) {
+            blit(sprite, spriteWidth, rows, srcX, srcWidth, x, y, op);
+            return;
+        }
+        int shift = srcY & 7;
+        int from  = Math.max(srcX, 0);
+        int to    = Math.min(srcX + srcWidth, spriteWidth);
+        rows = Math.min(Math.min(rows, sprite.length / spriteWidth * BitPerBank - srcY), Long.SIZE - shift);
+        if (from >= to || rows <= 0) {
+            return;
+        }
+        x += from - srcX;
+        if (op == OP_COPY) {
+            clearRect(x, y, to - from, rows);
+            op = OP_SET;
+        }
+
+        int  firstBank = srcY >> 3;
+        int  lastBank  = (srcY + rows - 1) >> 3;
+        long rowMask   = rows == Long.SIZE ? -1L : (1L << rows) - 1;
+        for (int column = from; column < to; column++) {
+            int px = x + column - from;
+            if (px < 0 || px >= mWidth) {
+                continue;
+            }
+            long bits = 0;
+            for (int sbank = firstBank; sbank <= lastBank; sbank++) {
+                bits |= (long) (sprite[sbank * spriteWidth + column] & 0xFF) << ((sbank - firstBank) * BitPerBank);
+            }
+            applyColumn(px, y, (bits >>> shift) & rowMask, op);
+        }
+    }
+
+    /**
+     * Sprite rows on bank boundaries, each sprite bank maps onto one frame bank
+     * and is combined with it byte by byte over the visible columns
+     */
+    private void blitAligned(byte[] sprite, int spriteWidth, int spriteHeight, int spriteBanks,
+                             int srcX, int srcWidth, int x, int firstBank, int op) {
+        int left  = Math.max(x, 0);
+        int right = Math.min(x + srcWidth, mWidth);
+        if (left >= right) {
+            return;
+        }
+
+        for (int sbank = Math.max(-firstBank, 0); sbank < spriteBanks && firstBank + sbank < mBanks; sbank++) {
+            int rows    = Math.min(spriteHeight - sbank * BitPerBank, BitPerBank);
+            int rowMask = 0xFF >>> (BitPerBank - rows);
+            int src     = sbank * spriteWidth + srcX + left - x;
+            int dst     = (firstBank + sbank) * mWidth + left;
+            int end     = dst + right - left;
+            switch (op) {
+                case OP_SET:   for (int i = dst; i < end; i++, src++) mBytes[i] |= sprite[src] & rowMask;  break;
+                case OP_CLEAR: for (int i = dst; i < end; i++, src++) mBytes[i] &= ~(sprite[src] & rowMask); break;
+                case OP_XOR:   for (int i = dst; i < end; i++, src++) mBytes[i] ^= sprite[src] & rowMask;  break;
+            }
+        }
+    }
+
+    /**
+     * Scroll the content, dx columns to the right and dy rows down (negative
+     * values scroll left/up). Pixels scrolled in are cleared.
+     */
+    public void scroll(int dx, int dy) {
+        if (dx != 0) {
+            scrollColumns(dx);
+        }
+        if (dy != 0) {
+            scrollRows(dy);
+        }
+    }
+
+    private void scrollColumns(int dx) {
+        int distance = Math.min(Math.abs(dx), mWidth);
+        for (int bank = 0; bank < mBanks; bank++) {
+            int offset = bank * mWidth;
+            if (dx > 0) {
+                System.arraycopy(mBytes, offset, mBytes, offset + distance, mWidth - distance);
+                Arrays.fill(mBytes, offset, offset + distance, (byte) 0x00);
+            } else {
+                System.arraycopy(mBytes, offset + distance, mBytes, offset, mWidth - distance);
+                Arrays.fill(mBytes, offset + mWidth - distance, offset + mWidth, (byte) 0x00);
+            }
+        }
+    }
+
+    private void scrollRows(int dy) {
+        if (Math.abs(dy) >= mHeight) {
+            clear();
+            return;
+        }
+
+        int bankShift = Math.abs(dy) >> 3;
+        int bitShift  = Math.abs(dy) & 7;
+        for (int column = 0; column < mWidth; column++) {
+            if (dy > 0) {
+                for (int bank = mBanks - 1; bank >= 0; bank--) {
+                    int src  = bank - bankShift;
+                    int low  = src >= 0 ? (mBytes[src * mWidth + column] & 0xFF) << bitShift : 0;
+                    int high = src >= 1 && bitShift != 0 ? (mBytes[(src - 1) * mWidth + column] & 0xFF) >>> (BitPerBank - bitShift) : 0;
+                    mBytes[bank * mWidth + column] = (byte) (low | high);
+                }
+            } else {
+                for (int bank = 0; bank < mBanks; bank++) {
+                    int src  = bank + bankShift;
+                    int high = src < mBanks ? (mBytes[src * mWidth + column] & 0xFF) >>> bitShift : 0;
+                    int low  = src + 1 < mBanks && bitShift != 0 ? (mBytes[(src + 1) * mWidth + column] & 0xFF) << (BitPerBank - bitShift) : 0;
+                    mBytes[bank * mWidth + column] = (byte) (high | low);
+                }
+            }
+        }
+    }
+}
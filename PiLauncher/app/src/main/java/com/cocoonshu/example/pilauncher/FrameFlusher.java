@@ -0,0 +1,129 @@
+package com.cocoonshu.example.pilauncher;
+
+import java.io.IOException;
+
+/**
+ * Sends bank layout frames to a panel, only the changed parts.
+ * A shadow copy of the last frame sent is diffed against each new frame per
+ * bank and only the changed column spans are sent, addressed with the
+ * commands of the PanelController. A full frame is sent instead when the
+ * shadow is unknown or the spans would cost more. Either way the update goes out as one CommandBatch.
+ * A batch which fails to go out invalidates the shadow, so the next flush sends a full frame.
+ * @Author Cocoonshu
+ * @Date 2017-05-08
+ */
+public class FrameFlusher {
+    private final PanelController mController;
+    private final int             mWidth;
+    private final int             mBanks;
+    private final byte[]          mShadow;
+    private final CommandBatch    mBatch;
+    private final int[]           mSpanStart;
+    private final int[]           mSpanEnd;
+    private boolean               mShadowValid = false;
+    private int                   mLastSent    = 0;
+    private int                   mLastSaved   = 0;
+    private long                  mTotalSaved  = 0;
+
+    public FrameFlusher(PanelController controller) {
+        int width   = controller.getWidth();
+        int banks   = controller.getBanks();
+        mController = controller;
+        mWidth      = width;
+        mBanks      = banks;
+        mShadow     = new byte[width * banks];
+        mBatch      = new CommandBatch(width * banks + controller.getAddressBytes() * banks);
+        mSpanStart  = new int[banks];
+        mSpanEnd    = new int[banks];
+    }
+
+    /**
+     * Forget what the panel shows, the next flush sends a full frame
+     */
+    public void invalidate() {
+        mShadowValid = false;
+    }
+
+    /**
+     * Record a frame sent to the panel by other means
+     */
+    public void markSent(FrameBuffer frame) {
+        System.arraycopy(frame.getBytes(), 0, mShadow, 0, mShadow.length);
+        mShadowValid = true;
+    }
+
+    /**
+     * @return the number of bytes saved compared to a full frame write
+     */
+    public int flush(FrameBuffer frame, DisplayBus bus) throws IOException {
+        byte[] bytes        = frame.getBytes();
+        int    addressBytes = mController.getAddressBytes();
+
+        int spanBytes = 0;
+        for (int bank = 0; bank < mBanks; bank++) {
+            int offset = bank * mWidth;
+            int start  = -1;
+            int end    = -1;
+            for (int column = 0; column < mWidth; column++) {
+                if (bytes[offset + column] != mShadow[offset + column]) {
+                    if (start < 0) {
+                        start = column;
+                    }
+                    end = column;
+                }
+            }
+            mSpanStart[bank] = start;
+            mSpanEnd[bank]   = end;
+            if (start >= 0) {
+                spanBytes += end - start + 1 + addressBytes;
+            }
+        }
+
+        int fullBytes = mShadow.length + addressBytes;
+        int sentBytes = 0;
+        if (!mShadowValid || spanBytes >= fullBytes) {
+            System.arraycopy(bytes, 0, mShadow, 0, mShadow.length);
+            mShadowValid = true;
+            mController.writeAddress(mBatch, 0, 0);
+            mBatch.data(mShadow, 0, mShadow.length);
+            sentBytes = fullBytes;
+        } else if (spanBytes > 0) {
+            for (int bank = 0; bank < mBanks; bank++) {
+                int start = mSpanStart[bank];
+                if (start < 0) {
+                    continue;
+                }
+                int offset = bank * mWidth + start;
+                int length = mSpanEnd[bank] - start + 1;
+                System.arraycopy(bytes, offset, mShadow, offset, length);
+                mController.writeAddress(mBatch, bank, start);
+                mBatch.data(mShadow, offset, length);
+            }
+            sentBytes = spanBytes;
+        }
+        try {
+            mBatch.send(bus);
+        } catch (IOException exp) {
+            // The shadow already holds what the panel didn't receive, resend it all next time
+            invalidate();
+            throw exp;
+        }
+
+        mLastSent   = sentBytes;
+        mLastSaved  = fullBytes - sentBytes;
+        mTotalSaved += mLastSaved;
+        return mLastSaved;
+    }
+
+    public int getLastSentBytes() {
+        return mLastSent;
+    }
+
+    public int getLastSavedBytes() {
+        return mLastSaved;
+    }
+
+    public long getTotalSavedBytes() {
+        return mTotalSaved;
+    }
+}
@@ -0,0 +1,87 @@
+package com.cocoonshu.example.pilauncher;
+
+/**
+ * Coalesces frame updates into at most one flush per tick.
+ * Drawing only invalidates the frame, the first invalidation after a flush
+ * asks for a flush at the next tick allowed by the maximum frame rate and the
+ * following ones are merged into it, each of them superseding a frame which
+ * is dropped and counted instead of sent.
+ * @Author Cocoonshu
+ * @Date 2017-05-12
+ */
+public class FrameScheduler {
+    public static final int DEFAULT_MAX_FPS = 30;
+
+    private static final long MILLIS_PER_SEC = 1000;
+
+    private volatile int  mMaxFps        = DEFAULT_MAX_FPS;
+    private volatile long mFrameInterval = MILLIS_PER_SEC / DEFAULT_MAX_FPS;
+    private long          mLastFlushTime = Long.MIN_VALUE / 2;
+    private boolean       mDirty         = false;
+    private volatile long mFlushedFrames = 0;
+    private volatile long mDroppedFrames = 0;
+
+    public FrameScheduler() {
+    }
+
+    public FrameScheduler(int maxFps) {
+        setMaxFps(maxFps);
+    }
+
+    /**
+     * @param maxFps 0 or less for no limit
+     */
+    public void setMaxFps(int maxFps) {
+        // The interval is in whole ms, the rate is kept as given to read back
+        mMaxFps        = Math.max(maxFps, 0);
+        mFrameInterval = maxFps > 0 ? MILLIS_PER_SEC / maxFps : 0;
+    }
+
+    public int getMaxFps() {
+        return mMaxFps;
+    }
+
+    /**
+     * Mark the frame dirty
+     * @return true when a flush has to be scheduled, false when one is already pending
+     */
+    public boolean invalidate() {
+        if (mDirty) {
+            mDroppedFrames++;
+            return false;
+        }
+        mDirty = true;
+        return true;
+    }
+
+    public boolean isDirty() {
+        return mDirty;
+    }
+
+    /**
+     * @return the earliest time the pending frame may be flushed, in the time base of now
+     */
+    public long getNextFlushTime(long now) {
+        return Math.max(now, mLastFlushTime + mFrameInterval);
+    }
+
+    /**
+     * Record a flush of the pending frame at now
+     */
+    public void onFlushed(long now) {
+        mDirty = false;
+        mLastFlushTime = now;
+        mFlushedFrames++;
+    }
+
+    public long getFlushedFrames() {
+        return mFlushedFrames;
+    }
+
+    /**
+     * @return frames superseded before they could be flushed
+     */
+    public long getDroppedFrames() {
+        return mDroppedFrames;
+    }
+}
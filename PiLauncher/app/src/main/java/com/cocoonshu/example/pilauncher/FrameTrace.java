@@ -0,0 +1,156 @@
+package com.cocoonshu.example.pilauncher;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Layout of the frame trace files written by FrameTraceRecorder.
+ * A file starts with a header, MAGIC, VERSION, the frame width and height
+ * as shorts, the wall clock time in ms and the monotonic time in us it was
+ * started at as longs, then holds one record per frame sent:
+ * <pre>
+ *   byte    RECORD_KEYFRAME or RECORD_DELTA
+ *   varint  us since the previous record, or since the header
+ *   varint  length of the wire bytes, then for each SPI transfer since the
+ *           previous record varint (length &lt;&lt; 1 | data) and its bytes
+ *   varint  length of the frame, then the frame bytes of a keyframe, or for
+ *           a delta the frame XOR the previous one as runs of varint zero
+ *           bytes, varint literal bytes and the literal bytes
+ * </pre>
+ * Every file starts with a keyframe, so each can be replayed on its own.
+ * Varints are unsigned LEB128, 7 bits a byte, low bits first.
+ * @Author Cocoonshu
+ * @Date 2017-05-29
+ */
+public final class FrameTrace {
+    public static final int  MAGIC           = 0x46545231;   // "FTR1"
+    public static final int  VERSION         = 1;
+    public static final int  HEADER_BYTES    = 4 + 1 + 2 + 2 + 8 + 8;
+    public static final byte RECORD_KEYFRAME = 1;
+    public static final byte RECORD_DELTA    = 2;
+
+    /**
+     * A zero run this short is cheaper kept in the literal bytes than split out
+     */
+    private static final int MIN_ZERO_RUN = 3;
+
+    private FrameTrace() {
+    }
+
+    /**
+     * @return the offset after the varint
+     */
+    public static int putVarint(byte[] out, int offset, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[offset++] = (byte) value;
+        return offset;
+    }
+
+    public static long readVarint(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Truncated varint");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Encode current XOR previous as zero runs and literals
+     * @param out at least maxDeltaBytes(length) bytes
+     * @return the offset after the delta
+     */
+    public static int encodeDelta(byte[] previous, byte[] current, int length, byte[] out, int offset) {
+        int i = 0;
+        while (i < length) {
+            int zeros = i;
+            while (zeros < length && previous[zeros] == current[zeros]) {
+                zeros++;
+            }
+            int literalStart = zeros;
+            int literalEnd   = zeros;
+            while (literalEnd < length) {
+                if (previous[literalEnd] != current[literalEnd]) {
+                    literalEnd++;
+                    continue;
+                }
+                int run = literalEnd;
+                while (run < length && run - literalEnd < MIN_ZERO_RUN && previous[run] == current[run]) {
+                    run++;
+                }
+                if (run == length || run - literalEnd >= MIN_ZERO_RUN) {
+                    break;
+                }
+                literalEnd = run;
+            }
+            if (literalStart == literalEnd) {
+                // Nothing changed up to the end
+                break;
+            }
+            offset = putVarint(out, offset, zeros - i);
+            offset = putVarint(out, offset, literalEnd - literalStart);
+            for (int k = literalStart; k < literalEnd; k++) {
+                out[offset++] = (byte) (previous[k] ^ current[k]);
+            }
+            i = literalEnd;
+        }
+        return offset;
+    }
+
+    /**
+     * Apply a delta to the previous frame, in place
+     */
+    public static void decodeDelta(InputStream in, int deltaBytes, byte[] frame) throws IOException {
+        CountingInput counted = new CountingInput(in);
+        int i = 0;
+        while (counted.count < deltaBytes) {
+            i += (int) readVarint(counted);
+            int literals = (int) readVarint(counted);
+            if (i + literals > frame.length) {
+                throw new IOException("Delta beyond the frame");
+            }
+            for (int k = 0; k < literals; k++) {
+                int b = counted.read();
+                if (b < 0) {
+                    throw new EOFException("Truncated delta");
+                }
+                frame[i++] ^= (byte) b;
+            }
+        }
+    }
+
+    /**
+     * @return the largest delta of a frame of length bytes, all literals
+     */
+    public static int maxDeltaBytes(int length) {
+        return length + 2 * 5;
+    }
+
+    private static final class CountingInput extends InputStream {
+        final InputStream in;
+        int               count = 0;
+
+        CountingInput(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.cocoonshu.example.pilauncher;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads back a file written by FrameTraceRecorder, one frame at a time, the
+ * deltas applied to the frame before. A file cut short by the death of the
+ * process ends at its last complete record, isTruncated() then being true.
+ * @Author Cocoonshu
+ * @Date 2017-05-29
+ */
+public class FrameTraceReader implements Closeable {
+
+    /**
+     * A frame as it was sent, reused from one call of next() to the other
+     */
+    public static final class Record {
+        public byte   type;
+        /**
+         * us since the start of the file, and since the record before
+         */
+        public long   timeMicros;
+        public long   intervalMicros;
+        /**
+         * The frame as the panel showed it after the record
+         */
+        public byte[] frame;
+        /**
+         * Bytes the trace spends on the frame, its delta or keyframe
+         */
+        public int    payloadBytes;
+        /**
+         * The wire bytes as laid out in the trace, see FrameTrace
+         */
+        public byte[] wire = new byte[0];
+        public int    wireLength;
+        /**
+         * SPI bytes and transfers since the record before, commands and data
+         */
+        public int    spiBytes;
+        public int    commandBytes;
+        public int    transfers;
+
+        public boolean isKeyframe() {
+            return type == FrameTrace.RECORD_KEYFRAME;
+        }
+    }
+
+    private final DataInputStream mIn;
+    private final int             mWidth;
+    private final int             mHeight;
+    private final long            mStartWallMillis;
+    private final long            mStartMicros;
+    private final byte[]          mFrame;
+    private boolean               mHasFrame  = false;
+    private boolean               mTruncated = false;
+    private long                  mMicros    = 0;
+
+    public FrameTraceReader(InputStream in) throws IOException {
+        mIn = new DataInputStream(new BufferedInputStream(in));
+        if (mIn.readInt() != FrameTrace.MAGIC) {
+            throw new IOException("Not a frame trace");
+        }
+        int version = mIn.readUnsignedByte();
+        if (version != FrameTrace.VERSION) {
+            throw new IOException("Unsupported frame trace version " + version);
+        }
+        mWidth           = mIn.readUnsignedShort();
+        mHeight          = mIn.readUnsignedShort();
+        mStartWallMillis = mIn.readLong();
+        mStartMicros     = mIn.readLong();
+        mFrame           = new byte[mWidth * mHeight / 8];
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * @return System.currentTimeMillis() when the file was started
+     */
+    public long getStartWallMillis() {
+        return mStartWallMillis;
+    }
+
+    /**
+     * @return the monotonic time of the first record, in us
+     */
+    public long getStartMicros() {
+        return mStartMicros;
+    }
+
+    public boolean isTruncated() {
+        return mTruncated;
+    }
+
+    /**
+     * @param record filled with the next frame
+     * @return false at the end of the file
+     */
+    public boolean next(Record record) throws IOException {
+        int type = mIn.read();
+        if (type < 0) {
+            return false;
+        }
+        if (type != FrameTrace.RECORD_KEYFRAME && type != FrameTrace.RECORD_DELTA) {
+            throw new IOException("Unknown record type " + type);
+        }
+
+        try {
+            long interval   = FrameTrace.readVarint(mIn);
+            int  wireLength = (int) FrameTrace.readVarint(mIn);
+            if (record.wire.length < wireLength) {
+                record.wire = new byte[wireLength];
+            }
+            mIn.readFully(record.wire, 0, wireLength);
+            int payloadBytes = (int) FrameTrace.readVarint(mIn);
+            if (type == FrameTrace.RECORD_KEYFRAME) {
+                if (payloadBytes != mFrame.length) {
+                    throw new IOException("Keyframe of " + payloadBytes + " bytes in a " + mWidth + "x" + mHeight + " trace");
+                }
+                mIn.readFully(mFrame);
+                mHasFrame = true;
+            } else if (!mHasFrame) {
+                throw new IOException("Delta without a keyframe");
+            } else {
+                FrameTrace.decodeDelta(mIn, payloadBytes, mFrame);
+            }
+
+            mMicros += interval;
+            record.type           = (byte) type;
+            record.timeMicros     = mMicros;
+            record.intervalMicros = interval;
+            record.frame          = mFrame;
+            record.payloadBytes   = payloadBytes;
+            record.wireLength     = wireLength;
+            countWire(record);
+            return true;
+        } catch (EOFException exp) {
+            mTruncated = true;
+            return false;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mIn.close();
+    }
+
+    private static void countWire(Record record) throws IOException {
+        ByteArrayInputStream wire = new ByteArrayInputStream(record.wire, 0, record.wireLength);
+        record.spiBytes     = 0;
+        record.commandBytes = 0;
+        record.transfers    = 0;
+        while (wire.available() > 0) {
+            long header = FrameTrace.readVarint(wire);
+            int  length = (int) (header >>> 1);
+            if (wire.skip(length) != length) {
+                throw new IOException("Truncated wire bytes");
+            }
+            record.spiBytes += length;
+            if ((header & 1) == 0) {
+                record.commandBytes += length;
+            }
+            record.transfers++;
+        }
+    }
+}
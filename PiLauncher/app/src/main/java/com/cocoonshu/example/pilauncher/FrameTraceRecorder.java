@@ -0,0 +1,253 @@
+package com.cocoonshu.example.pilauncher;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Records the frames sent to a panel and the bytes they took on the wire,
+ * in the FrameTrace format. A frame costs a delta against the previous one,
+ * a few bytes when little changed, and a keyframe every KEYFRAME_INTERVAL
+ * frames and at the start of each file. The trace goes to name.ftr in the
+ * directory until it reaches maxFileBytes, then rotates to name.1.ftr and so
+ * on, the oldest of maxFiles files being deleted, so it never takes more
+ * than maxFileBytes * maxFiles. The trace left by a previous run is rotated
+ * the same way at the first record, not overwritten, as it is the one
+ * showing what led to a restart. Writes are buffered, what is still in the
+ * buffer is lost if the process dies before flush() or close(). A write
+ * error stops the recording, see getError().
+ * @Author Cocoonshu
+ * @Date 2017-05-29
+ */
+public class FrameTraceRecorder {
+    public static final String SUFFIX             = ".ftr";
+    public static final int    KEYFRAME_INTERVAL  = 256;
+    public static final long   DEFAULT_FILE_BYTES = 256 * 1024;
+    public static final int    DEFAULT_FILES      = 4;
+
+    private static final int BUFFER_BYTES = 8 * 1024;
+
+    private final File           mDirectory;
+    private final String         mName;
+    private final long           mMaxFileBytes;
+    private final int            mMaxFiles;
+    private final int            mWidth;
+    private final int            mHeight;
+    private final byte[]         mPrevious;
+    private final byte[]         mPayload;
+    private final byte[]         mVarints    = new byte[3 * 10];
+    private DataOutputStream     mOut        = null;
+    private long                 mFileBytes  = 0;
+    private long                 mLastMicros = 0;
+    private int                  mSinceKey   = 0;
+    private boolean              mClosed     = false;
+    private volatile IOException mError      = null;
+    private volatile long        mRecords    = 0;
+    private volatile long        mKeyframes  = 0;
+    private volatile long        mTraceBytes = 0;
+
+    /**
+     * @param directory    where the trace files go, created if needed
+     * @param name         base name of the files
+     * @param maxFileBytes size a file rotates at
+     * @param maxFiles     files kept, the current one included
+     */
+    public FrameTraceRecorder(File directory, String name, long maxFileBytes, int maxFiles, int width, int height) {
+        if (maxFileBytes <= FrameTrace.HEADER_BYTES || maxFiles < 1 || height % 8 != 0) {
+            throw new IllegalArgumentException("Invalid trace " + maxFileBytes + " bytes x " + maxFiles
+                    + " files, " + width + "x" + height);
+        }
+        mDirectory    = directory;
+        mName         = name;
+        mMaxFileBytes = maxFileBytes;
+        mMaxFiles     = maxFiles;
+        mWidth        = width;
+        mHeight       = height;
+        mPrevious     = new byte[width * height / 8];
+        mPayload      = new byte[FrameTrace.maxDeltaBytes(mPrevious.length)];
+    }
+
+    /**
+     * Record a frame as sent, on the thread sending the frames
+     * @param timeNanos  monotonic time of the frame
+     * @param wire       bytes written to the panel since the previous frame, laid out by WireTap
+     * @param wireLength length of wire
+     * @return false if the recorder is closed or stopped by an error
+     */
+    public synchronized boolean record(long timeNanos, FrameBuffer frame, byte[] wire, int wireLength) {
+        if (frame.getBytes().length != mPrevious.length) {
+            throw new IllegalArgumentException("Frame " + frame.getWidth() + "x" + frame.getHeight()
+                    + " recorded in a " + mWidth + "x" + mHeight + " trace");
+        }
+        if (mClosed || mError != null) {
+            return false;
+        }
+
+        try {
+            long micros = timeNanos / 1000;
+            if (mOut == null) {
+                if (getFile().exists()) {
+                    shiftFilesInner();
+                }
+                openInner(micros);
+            }
+
+            byte[]  bytes    = frame.getBytes();
+            boolean keyframe = mSinceKey == 0;
+            int     payloadLength;
+            if (keyframe) {
+                System.arraycopy(bytes, 0, mPayload, 0, bytes.length);
+                payloadLength = bytes.length;
+            } else {
+                payloadLength = FrameTrace.encodeDelta(mPrevious, bytes, bytes.length, mPayload, 0);
+            }
+            int varints = FrameTrace.putVarint(mVarints, 0, Math.max(0, micros - mLastMicros));
+            varints = FrameTrace.putVarint(mVarints, varints, wireLength);
+            int payloadAt = varints;
+            varints = FrameTrace.putVarint(mVarints, varints, payloadLength);
+
+            // Rotate before the record overflows the file, a file always holds one record at least
+            long recordBytes = 1 + varints + wireLength + payloadLength;
+            if (mFileBytes > FrameTrace.HEADER_BYTES && mFileBytes + recordBytes > mMaxFileBytes) {
+                rotateInner(micros);
+                return record(timeNanos, frame, wire, wireLength);
+            }
+
+            mOut.writeByte(keyframe ? FrameTrace.RECORD_KEYFRAME : FrameTrace.RECORD_DELTA);
+            mOut.write(mVarints, 0, payloadAt);
+            mOut.write(wire, 0, wireLength);
+            mOut.write(mVarints, payloadAt, varints - payloadAt);
+            mOut.write(mPayload, 0, payloadLength);
+
+            System.arraycopy(bytes, 0, mPrevious, 0, bytes.length);
+            mSinceKey = (mSinceKey + 1) % KEYFRAME_INTERVAL;
+            mLastMicros = micros;
+            mFileBytes += recordBytes;
+            mTraceBytes += recordBytes;
+            mRecords++;
+            if (keyframe) {
+                mKeyframes++;
+            }
+            return true;
+        } catch (IOException exp) {
+            stopInner(exp);
+            return false;
+        }
+    }
+
+    /**
+     * Write the buffered records to the file
+     */
+    public synchronized void flush() {
+        if (mOut == null || mError != null) {
+            return;
+        }
+
+        try {
+            mOut.flush();
+        } catch (IOException exp) {
+            stopInner(exp);
+        }
+    }
+
+    /**
+     * Flush and close the file, records are dropped from now on
+     */
+    public synchronized void close() {
+        mClosed = true;
+        if (mOut == null) {
+            return;
+        }
+
+        try {
+            mOut.close();
+        } catch (IOException exp) {
+            mError = exp;
+        }
+        mOut = null;
+    }
+
+    /**
+     * @return the file being written, name.ftr
+     */
+    public File getFile() {
+        return getFile(0);
+    }
+
+    /**
+     * @param age 0 for the current file, 1 for the one before, up to maxFiles - 1
+     */
+    public File getFile(int age) {
+        return new File(mDirectory, age == 0 ? mName + SUFFIX : mName + "." + age + SUFFIX);
+    }
+
+    /**
+     * @return the error which stopped the recording, null while it records
+     */
+    public IOException getError() {
+        return mError;
+    }
+
+    public long getRecords() {
+        return mRecords;
+    }
+
+    public long getKeyframes() {
+        return mKeyframes;
+    }
+
+    /**
+     * @return bytes of trace written, all files together
+     */
+    public long getTraceBytes() {
+        return mTraceBytes;
+    }
+
+    private void openInner(long micros) throws IOException {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Cannot create " + mDirectory);
+        }
+        mOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(getFile()), BUFFER_BYTES));
+        mOut.writeInt(FrameTrace.MAGIC);
+        mOut.writeByte(FrameTrace.VERSION);
+        mOut.writeShort(mWidth);
+        mOut.writeShort(mHeight);
+        mOut.writeLong(System.currentTimeMillis());
+        mOut.writeLong(micros);
+        mFileBytes  = FrameTrace.HEADER_BYTES;
+        mTraceBytes += FrameTrace.HEADER_BYTES;
+        mLastMicros = micros;
+        mSinceKey   = 0;
+    }
+
+    private void rotateInner(long micros) throws IOException {
+        mOut.close();
+        mOut = null;
+        shiftFilesInner();
+        openInner(micros);
+    }
+
+    /**
+     * Move each file one age up, the oldest being deleted and name.ftr freed
+     */
+    private void shiftFilesInner() {
+        getFile(mMaxFiles - 1).delete();
+        for (int age = mMaxFiles - 1; age > 0; age--) {
+            getFile(age - 1).renameTo(getFile(age));
+        }
+    }
+
+    private void stopInner(IOException error) {
+        mError = error;
+        if (mOut != null) {
+            try {
+                mOut.close();
+            } catch (IOException exp) {
+                // Ignore
+            }
+            mOut = null;
+        }
+    }
+}
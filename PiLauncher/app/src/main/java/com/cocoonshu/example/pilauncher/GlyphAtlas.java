@@ -0,0 +1,129 @@
+package com.cocoonshu.example.pilauncher;
+
+/**
+ * Monochrome glyph cache for the PCD8544 bank layout.
+ * Glyphs are stored once per typeface/size in a packed 1-bit column atlas,
+ * where each column of a glyph cell is a long and bit n is row n of the cell.
+ * Drawing text is then just shifting and OR-ing columns into the frame,
+ * without any allocation and with a cost scaling with the string length only.
+ * The atlas itself is built by GlyphRasterizer.
+ * @Author Cocoonshu
+ * @Date 2017-05-02
+ */
+public class GlyphAtlas {
+    public static final char FIRST_CHAR    = 0x20;
+    public static final char LAST_CHAR     = 0x7E;
+    public static final int  GLYPH_COUNT   = LAST_CHAR - FIRST_CHAR + 1;
+    public static final int  MAX_CELL_ROWS = Long.SIZE;
+
+    private static final char FALLBACK_CHAR = '?';
+
+    private final long[] mColumns;
+    private final int[]  mGlyphOffset;
+    private final int[]  mGlyphWidth;
+    private final int    mCellTop;
+    private final int    mCellHeight;
+    private final int    mAscent;
+    private final int    mDescent;
+
+    /**
+     * An atlas whose line spans the whole glyph cells
+     */
+    public GlyphAtlas(int cellTop, int cellHeight, int[] glyphWidth, long[] columns) {
+        this(cellTop, cellHeight, cellTop, cellTop + cellHeight, glyphWidth, columns);
+    }
+
+    /**
+     * @param cellTop    top of the glyph cells relative to the baseline, negative upward
+     * @param cellHeight rows of the glyph cells, at most MAX_CELL_ROWS
+     * @param ascent     top of the line relative to the baseline, at or below cellTop
+     * @param descent    bottom of the line relative to the baseline
+     * @param glyphWidth advance of each glyph from FIRST_CHAR to LAST_CHAR
+     * @param columns    columns of all glyphs one after the other, bit n being row n of the cell
+     */
+    public GlyphAtlas(int cellTop, int cellHeight, int ascent, int descent, int[] glyphWidth, long[] columns) {
+        if (glyphWidth.length != GLYPH_COUNT || cellHeight > MAX_CELL_ROWS) {
+            throw new IllegalArgumentException("Invalid glyph atlas");
+        }
+        mCellTop     = cellTop;
+        mCellHeight  = cellHeight;
+        mAscent      = Math.max(ascent, cellTop);
+        mDescent     = descent;
+        mGlyphWidth  = glyphWidth;
+        mGlyphOffset = new int[GLYPH_COUNT];
+        mColumns     = columns;
+
+        int offset = 0;
+        for (int i = 0; i < GLYPH_COUNT; i++) {
+            mGlyphOffset[i] = offset;
+            offset += glyphWidth[i];
+        }
+        if (offset > columns.length) {
+            throw new IllegalArgumentException("Missing glyph columns");
+        }
+    }
+
+    private static int indexOf(char character) {
+        if (character < FIRST_CHAR || character > LAST_CHAR) {
+            character = FALLBACK_CHAR;
+        }
+        return character - FIRST_CHAR;
+    }
+
+    public int getCellTop() {
+        return mCellTop;
+    }
+
+    public int getCellHeight() {
+        return mCellHeight;
+    }
+
+    /**
+     * @return top of the line relative to the baseline like Paint.FontMetrics.ascent, the cells
+     *         reaching above it only for accents and the like
+     */
+    public int getAscent() {
+        return mAscent;
+    }
+
+    /**
+     * @return bottom of the line relative to the baseline like Paint.FontMetrics.descent
+     */
+    public int getDescent() {
+        return mDescent;
+    }
+
+    /**
+     * @return the advance of text in pixels, without drawing it
+     */
+    public int measureText(CharSequence text) {
+        int width = 0;
+        for (int i = 0; i < text.length(); i++) {
+            width += mGlyphWidth[indexOf(text.charAt(i))];
+        }
+        return width;
+    }
+
+    /**
+     * OR the glyphs of text into a frame, baseline at y like Canvas.drawText.
+     * @return the x position following the last drawn glyph
+     */
+    public int drawText(FrameBuffer frame, int x, int y, CharSequence text) {
+        int top = y + mCellTop;
+        if (top >= frame.getHeight() || top + mCellHeight <= 0) {
+            return x + measureText(text);
+        }
+
+        int width = frame.getWidth();
+        for (int i = 0; i < text.length() && x < width; i++) {
+            int index      = indexOf(text.charAt(i));
+            int offset     = mGlyphOffset[index];
+            int glyphWidth = mGlyphWidth[index];
+            for (int column = 0; column < glyphWidth; column++) {
+                frame.applyColumn(x + column, top, mColumns[offset + column], FrameBuffer.OP_SET);
+            }
+            x += glyphWidth;
+        }
+        return x;
+    }
+}
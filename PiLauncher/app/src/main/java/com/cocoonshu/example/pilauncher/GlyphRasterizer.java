@@ -0,0 +1,78 @@
+package com.cocoonshu.example.pilauncher;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.Typeface;
+import android.text.TextPaint;
+
+/**
+ * Builds GlyphAtlas instances with the Android text renderer.
+ * @Author Cocoonshu
+ * @Date 2017-05-08
+ */
+public final class GlyphRasterizer {
+    private static final int GARY_THRESHOLD = 0x80;
+
+    private GlyphRasterizer() {
+    }
+
+    /**
+     * Rasterize every glyph of the atlas once, thresholded like the former Bitmap path
+     */
+    public static GlyphAtlas rasterize(Typeface typeface, float textSize) {
+        TextPaint paint = new TextPaint();
+        paint.setColor(Color.WHITE);
+        paint.setTextSize(textSize);
+        paint.setSubpixelText(true);
+        if (typeface != null) {
+            paint.setTypeface(typeface);
+        }
+
+        Paint.FontMetricsInt metrics = paint.getFontMetricsInt();
+        int    cellTop    = metrics.top;
+        int    cellHeight = Math.min(metrics.bottom - metrics.top, GlyphAtlas.MAX_CELL_ROWS);
+        int[]  glyphWidth = new int[GlyphAtlas.GLYPH_COUNT];
+        char[] glyph      = new char[1];
+
+        int cellWidth   = 0;
+        int columnCount = 0;
+        for (int i = 0; i < GlyphAtlas.GLYPH_COUNT; i++) {
+            glyph[0] = (char) (GlyphAtlas.FIRST_CHAR + i);
+            glyphWidth[i] = (int) Math.ceil(paint.measureText(glyph, 0, 1));
+            columnCount += glyphWidth[i];
+            cellWidth = Math.max(cellWidth, glyphWidth[i]);
+        }
+        long[] columns = new long[columnCount];
+        if (cellWidth == 0 || cellHeight <= 0) {
+            return new GlyphAtlas(cellTop, 0, metrics.ascent, metrics.descent, glyphWidth, columns);
+        }
+
+        Bitmap cell   = Bitmap.createBitmap(cellWidth, cellHeight, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(cell);
+        int[]  pixels = new int[cellWidth * cellHeight];
+        int    offset = 0;
+        for (int i = 0; i < GlyphAtlas.GLYPH_COUNT; i++) {
+            glyph[0] = (char) (GlyphAtlas.FIRST_CHAR + i);
+            canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+            canvas.drawText(glyph, 0, 1, 0, -cellTop, paint);
+            cell.getPixels(pixels, 0, cellWidth, 0, 0, cellWidth, cellHeight);
+            for (int column = 0; column < glyphWidth[i]; column++) {
+                long bits = 0;
+                for (int row = 0; row < cellHeight; row++) {
+                    int color = pixels[row * cellWidth + column];
+                    int gary  = (Color.red(color) + (Color.green(color) << 2) + Color.blue(color)) >> 2;
+                    if (gary > GARY_THRESHOLD) {
+                        bits |= 1L << row;
+                    }
+                }
+                columns[offset + column] = bits;
+            }
+            offset += glyphWidth[i];
+        }
+        cell.recycle();
+        return new GlyphAtlas(cellTop, cellHeight, metrics.ascent, metrics.descent, glyphWidth, columns);
+    }
+}
@@ -0,0 +1,123 @@
+package com.cocoonshu.example.pilauncher;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A method hidden from the public API, looked up once per class.
+ * Class.getMethod() walks the public methods of the class and of its
+ * supertypes and copies the Method it finds on every call, and an invoke()
+ * through a fresh Method checks its access again, so a handle keeps the
+ * Method resolved the first time, made accessible, or the fact that the class
+ * doesn't have it. The handles are shared by every instance of a class and
+ * are thread safe.
+ * @Author Cocoonshu
+ * @Date 2017-05-26
+ */
+public final class HiddenMethod {
+    private static final ConcurrentHashMap<Key, HiddenMethod> sHandles = new ConcurrentHashMap<>();
+
+    private static final class Key {
+        final Class<?>   owner;
+        final String     name;
+        final Class<?>[] parameters;
+        final int        hash;
+
+        Key(Class<?> owner, String name, Class<?>[] parameters) {
+            this.owner      = owner;
+            this.name       = name;
+            this.parameters = parameters;
+            int hash = 31 * owner.hashCode() + name.hashCode();
+            for (Class<?> parameter : parameters) {
+                hash = 31 * hash + parameter.hashCode();
+            }
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) object;
+            if (owner != other.owner || !name.equals(other.name) || parameters.length != other.parameters.length) {
+                return false;
+            }
+            for (int i = 0; i < parameters.length; i++) {
+                if (parameters[i] != other.parameters[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private final String mName;
+    private final Method mMethod;
+
+    private HiddenMethod(String name, Method method) {
+        mName   = name;
+        mMethod = method;
+    }
+
+    /**
+     * @return the handle of the public method of owner, or of one of its
+     * supertypes, resolved on the first call for the class
+     */
+    public static HiddenMethod of(Class<?> owner, String name, Class<?>... parameters) {
+        Key          key    = new Key(owner, name, parameters);
+        HiddenMethod handle = sHandles.get(key);
+        if (handle == null) {
+            HiddenMethod resolved = new HiddenMethod(name, resolve(owner, name, parameters));
+            handle = sHandles.putIfAbsent(key, resolved);
+            if (handle == null) {
+                handle = resolved;
+            }
+        }
+        return handle;
+    }
+
+    private static Method resolve(Class<?> owner, String name, Class<?>[] parameters) {
+        try {
+            Method method = owner.getMethod(name, parameters);
+            try {
+                method.setAccessible(true);
+            } catch (SecurityException e) {
+                // Still callable, only with the access checks
+            }
+            return method;
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * @return false when the class doesn't have the method, invoke() then always throwing
+     */
+    public boolean isAvailable() {
+        return mMethod != null;
+    }
+
+    /**
+     * @return what the method returned, boxed, null for a void method
+     * @throws NoSuchMethodException if the method isn't available
+     * @throws InvocationTargetException wrapping what the method threw
+     */
+    public Object invoke(Object target, Object... arguments)
+            throws NoSuchMethodException, InvocationTargetException, IllegalAccessException {
+        if (mMethod == null) {
+            throw new NoSuchMethodException(mName);
+        }
+        return mMethod.invoke(target, arguments);
+    }
+}
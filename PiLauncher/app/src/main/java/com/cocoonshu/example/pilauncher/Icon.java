@@ -0,0 +1,85 @@
+package com.cocoonshu.example.pilauncher;
+
+/**
+ * Image in a rectangle, centered and clipped to it. Images are bank layout
+ * bitmaps like the ones of Icons, switching to the image already shown does
+ * nothing. A blinking icon is shown and hidden in turn with the animation
+ * time, a redraw for each half period.
+ * @Author Cocoonshu
+ * @Date 2017-05-23
+ */
+public class Icon extends Widget {
+    private volatile FrameBuffer mImage       = null;
+    private volatile long        mBlinkPeriod = 0;
+    private volatile boolean     mBlinkOff    = false;
+
+    public Icon(int x, int y, int width, int height) {
+        super(x, y, width, height);
+    }
+
+    /**
+     * @param image bitmap to show, null for none, not to be changed afterwards
+     */
+    public void setImage(FrameBuffer image) {
+        if (mImage != image) {
+            mImage = image;
+            invalidate();
+        }
+    }
+
+    public FrameBuffer getImage() {
+        return mImage;
+    }
+
+    /**
+     * @param period ms of animation time for a blink, shown then hidden, 0 to stop and show the image
+     */
+    public void setBlinking(long period) {
+        mBlinkPeriod = Math.max(period, 0);
+        if (period > 0) {
+            startAnimation();
+        } else if (mBlinkOff) {
+            mBlinkOff = false;
+            invalidate();
+        }
+    }
+
+    public boolean isBlinking() {
+        return mBlinkPeriod > 0;
+    }
+
+    @Override
+    public boolean isAnimating() {
+        return mBlinkPeriod > 0;
+    }
+
+    @Override
+    public boolean animate(long time) {
+        long period = mBlinkPeriod;
+        if (period <= 0) {
+            return false;
+        }
+
+        boolean off = time % period >= period / 2;
+        if (off != mBlinkOff) {
+            mBlinkOff = off;
+            invalidate();
+        }
+        return true;
+    }
+
+    @Override
+    protected void onDraw(DrawContext context) {
+        FrameBuffer image = mImage;
+        if (image == null || mBlinkOff) {
+            return;
+        }
+
+        int width  = Math.min(image.getWidth(), mWidth);
+        int height = Math.min(image.getHeight(), mHeight);
+        int srcX   = (image.getWidth() - width) / 2;
+        int x      = mX + (mWidth - width) / 2;
+        int y      = mY + (mHeight - height) / 2;
+        context.frame.blit(image.getBytes(), image.getWidth(), height, srcX, width, x, y, FrameBuffer.OP_SET);
+    }
+}
@@ -0,0 +1,30 @@
+package com.cocoonshu.example.pilauncher;
+
+/**
+ * 8x8 images for the Icon widgets of the status screen, one byte per column,
+ * bit n being row n.
+ * @Author Cocoonshu
+ * @Date 2017-05-23
+ */
+public class Icons {
+    public static final int SIZE = 8;
+
+    public static final FrameBuffer WIFI      = create(
+            (byte) 0x04, (byte) 0x12, (byte) 0x0A, (byte) 0x6A, (byte) 0x6A, (byte) 0x0A, (byte) 0x12, (byte) 0x04);
+    public static final FrameBuffer OFFLINE   = create(
+            (byte) 0x00, (byte) 0x42, (byte) 0x24, (byte) 0x18, (byte) 0x18, (byte) 0x24, (byte) 0x42, (byte) 0x00);
+    public static final FrameBuffer BLUETOOTH = create(
+            (byte) 0x00, (byte) 0x24, (byte) 0x18, (byte) 0xFF, (byte) 0x5A, (byte) 0x24, (byte) 0x00, (byte) 0x00);
+    public static final FrameBuffer PLAY      = create(
+            (byte) 0x00, (byte) 0xFE, (byte) 0x7C, (byte) 0x38, (byte) 0x10, (byte) 0x00, (byte) 0x00, (byte) 0x00);
+    public static final FrameBuffer PAUSE     = create(
+            (byte) 0x00, (byte) 0x7E, (byte) 0x7E, (byte) 0x00, (byte) 0x7E, (byte) 0x7E, (byte) 0x00, (byte) 0x00);
+    public static final FrameBuffer STOP      = create(
+            (byte) 0x00, (byte) 0x7C, (byte) 0x7C, (byte) 0x7C, (byte) 0x7C, (byte) 0x7C, (byte) 0x00, (byte) 0x00);
+
+    private static FrameBuffer create(byte... columns) {
+        FrameBuffer image = new FrameBuffer(SIZE, SIZE);
+        System.arraycopy(columns, 0, image.getBytes(), 0, SIZE);
+        return image;
+    }
+}
@@ -0,0 +1,65 @@
+package com.cocoonshu.example.pilauncher;
+
+/**
+ * Latencies of the button presses, from the GPIO edge to what the user sees.
+ * Each stage has its histogram, recorded by the thread the stage ends on:
+ * <pre>
+ *   edge->dispatch   the edge, or the long press timeout, timestamped on
+ *                    the button thread, to the listener being called on
+ *                    the main thread
+ *   handling         the listener running
+ *   edge->backlight  the edge to the backlight GPIO written
+ * </pre>
+ * The edge to the frame on the wire is measured by the PanelDriver the
+ * press changed, see PanelDriver.traceInput(). Times are in ns of
+ * SystemClock.elapsedRealtimeNanos().
+ * @Author Cocoonshu
+ * @Date 2017-05-31
+ */
+public class InputLatency {
+    private final LatencyHistogram mEdgeToDispatch  = new LatencyHistogram();
+    private final LatencyHistogram mHandling        = new LatencyHistogram();
+    private final LatencyHistogram mEdgeToBacklight = new LatencyHistogram();
+
+    /**
+     * Main thread
+     */
+    public void onDispatched(long edgeNanos, long nowNanos) {
+        mEdgeToDispatch.record((nowNanos - edgeNanos) / 1000);
+    }
+
+    /**
+     * Main thread
+     */
+    public void onHandled(long dispatchNanos, long nowNanos) {
+        mHandling.record((nowNanos - dispatchNanos) / 1000);
+    }
+
+    /**
+     * Main thread, once the backlight GPIO has been written
+     */
+    public void onBacklightChanged(long edgeNanos, long nowNanos) {
+        mEdgeToBacklight.record((nowNanos - edgeNanos) / 1000);
+    }
+
+    public LatencyHistogram getEdgeToDispatch() {
+        return mEdgeToDispatch;
+    }
+
+    public LatencyHistogram getHandling() {
+        return mHandling;
+    }
+
+    public LatencyHistogram getEdgeToBacklight() {
+        return mEdgeToBacklight;
+    }
+
+    public void dump(StringBuilder out, String prefix, String separator) {
+        out.append(prefix).append("edge->dispatch: ");
+        mEdgeToDispatch.dump(out);
+        out.append(separator).append(prefix).append("handling: ");
+        mHandling.dump(out);
+        out.append(separator).append(prefix).append("edge->backlight: ");
+        mEdgeToBacklight.dump(out);
+    }
+}
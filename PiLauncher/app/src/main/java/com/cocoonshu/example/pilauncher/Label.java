@@ -0,0 +1,73 @@
+package com.cocoonshu.example.pilauncher;
+
+/**
+ * One line of text in a rectangle, the ascent of the font at its top, or
+ * the descent at its bottom when the line is taller than the rectangle, so
+ * the baseline and the descenders stay inside it. The text is drawn from the
+ * TextBlockCache and clipped to the rectangle on all sides. Setting the text it already shows does nothing.
+ * @Author Cocoonshu
+ * @Date 2017-05-23
+ */
+public class Label extends Widget {
+    private volatile CharSequence mText  = null;
+    private volatile int          mAlign = TextBlockCache.ALIGN_LEFT;
+
+    public Label(int x, int y, int width, int height) {
+        super(x, y, width, height);
+    }
+
+    public void setText(CharSequence text) {
+        if (!contentEquals(mText, text)) {
+            mText = text;
+            invalidate();
+        }
+    }
+
+    public CharSequence getText() {
+        return mText;
+    }
+
+    /**
+     * @param align TextBlockCache.ALIGN_LEFT, ALIGN_CENTER or ALIGN_RIGHT, within the rectangle
+     */
+    public void setAlign(int align) {
+        if (mAlign != align) {
+            mAlign = align;
+            invalidate();
+        }
+    }
+
+    public int getAlign() {
+        return mAlign;
+    }
+
+    @Override
+    protected void onDraw(DrawContext context) {
+        CharSequence text = mText;
+        if (text == null) {
+            return;
+        }
+        TextBlockCache.TextBlock block = context.textCache.get(context.atlas, context.textSize, text, TextBlockCache.ALIGN_LEFT);
+        if (block == null) {
+            return;
+        }
+
+        int left = mX;
+        switch (mAlign) {
+            case TextBlockCache.ALIGN_CENTER: left += (mWidth - block.advance) / 2; break;
+            case TextBlockCache.ALIGN_RIGHT:  left += mWidth - block.advance;       break;
+        }
+        // Baseline from the top of the rectangle, the rows above the ascent and those the
+        // rectangle is too short for skipped from the top of the block
+        int baseline = Math.min(-context.atlas.getAscent(), mHeight - context.atlas.getDescent());
+        int skipped  = Math.max(-block.top - baseline, 0);
+        int rows     = Math.min(block.rows - skipped, mHeight);
+        int from     = Math.max(mX - left, 0);
+        int to       = Math.min(block.advance, mX + mWidth - left);
+        if (from < to && rows > 0) {
+            FrameBuffer bitmap = block.bitmap;
+            context.frame.blit(bitmap.getBytes(), bitmap.getWidth(), skipped, rows,
+                    from, to - from, left + from, mY + Math.max(baseline + block.top, 0), FrameBuffer.OP_SET);
+        }
+    }
+}
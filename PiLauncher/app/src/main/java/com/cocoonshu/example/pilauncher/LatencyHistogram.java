@@ -0,0 +1,99 @@
+package com.cocoonshu.example.pilauncher;
+
+/**
+ * Latency histogram with fixed power of two buckets, in microseconds.
+ * Bucket 0 counts latencies under 1us and bucket i those from 2^(i-1) to
+ * 2^i - 1 us, the last one taking everything above, about 4s. Recording is a
+ * leading zero count and an increment, without allocation or locking, meant
+ * for a single recording thread. Readers on other threads see counts which
+ * may lag behind by the sample being recorded.
+ * @Author Cocoonshu
+ * @Date 2017-05-21
+ */
+public class LatencyHistogram {
+    public static final int BUCKET_COUNT = 24;
+
+    private final long[]  mBuckets = new long[BUCKET_COUNT];
+    private volatile long mCount   = 0;
+    private long          mSum     = 0;
+    private long          mMax     = 0;
+
+    public void record(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+        int bucket = Math.min(Long.SIZE - Long.numberOfLeadingZeros(micros), BUCKET_COUNT - 1);
+        mBuckets[bucket]++;
+        mSum += micros;
+        if (micros > mMax) {
+            mMax = micros;
+        }
+        mCount++;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mBuckets[i] = 0;
+        }
+        mSum   = 0;
+        mMax   = 0;
+        mCount = 0;
+    }
+
+    public long getCount() {
+        return mCount;
+    }
+
+    public long getBucket(int bucket) {
+        return mBuckets[bucket];
+    }
+
+    /**
+     * @return the largest latency counted by bucket, Long.MAX_VALUE for the last one
+     */
+    public static long getBucketUpperBound(int bucket) {
+        return bucket < BUCKET_COUNT - 1 ? (1L << bucket) - 1 : Long.MAX_VALUE;
+    }
+
+    public long getMean() {
+        long count = mCount;
+        return count > 0 ? mSum / count : 0;
+    }
+
+    public long getMax() {
+        return mMax;
+    }
+
+    /**
+     * @param fraction 0.5 for the median, 0.99 for the 99th percentile
+     * @return the upper bound of the bucket holding that percentile, capped by the maximum
+     */
+    public long getPercentile(double fraction) {
+        long count = mCount;
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(fraction * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mBuckets[i];
+            if (seen >= rank) {
+                return Math.min(getBucketUpperBound(i), mMax);
+            }
+        }
+        return mMax;
+    }
+
+    /**
+     * Append a one line summary, like "n=120 mean=350us p50<=511us p90<=1023us p99<=2047us max=1800us"
+     */
+    public void dump(StringBuilder out) {
+        out.append("n=").append(getCount())
+           .append(" mean=").append(getMean()).append("us")
+           .append(" p50<=").append(getPercentile(0.50)).append("us")
+           .append(" p90<=").append(getPercentile(0.90)).append("us")
+           .append(" p99<=").append(getPercentile(0.99)).append("us")
+           .append(" max=").append(getMax()).append("us");
+    }
+}
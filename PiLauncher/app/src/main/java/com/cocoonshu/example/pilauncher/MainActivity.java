@@ -4,54 +4,66 @@ import android.app.Activity;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothProfile;
-import android.content.BroadcastReceiver;
-import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
-import android.net.NetworkUtils;
+import android.media.AudioManager;
 import android.net.wifi.WifiManager;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
 import android.speech.tts.TextToSpeech;
 import android.util.Log;
-import android.view.KeyEvent;
 import android.view.View;
 import android.widget.TextView;
 
 import com.google.android.things.pio.PeripheralManagerService;
-import com.google.android.things.contrib.driver.button.Button;
-import com.google.android.things.contrib.driver.button.ButtonInputDriver;
 
+import java.io.File;
+import java.io.FileDescriptor;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
 
-import static android.view.KeyEvent.KEYCODE_0;
-
 public class MainActivity extends Activity {
     private static final String TAG                              = "A2DPSinkActivity";
     private static final String ADAPTER_FRIENDLY_NAME            = "Cocoonshu Bluetooth device";
     private static final int    DISCOVERABLE_TIMEOUT_MS          = 30 * 1000;
     private static final int    REQUEST_CODE_ENABLE_DISCOVERABLE = 100;
     private static final String UTTERANCE_ID                     = "com.example.androidthings.bluetooth.audio.UTTERANCE_ID";
+    private static final String ANNOUNCEMENT_DIRECTORY           = "announcements";
+    private static final String TRACE_DIRECTORY                  = "traces";
+    private static final long   PAUSE_BLINK_PERIOD               = 1000;
+    private static final long   VOLUME_SLIDE_DURATION            = 250;
+    private static final String DISCOVERABLE_ANNOUNCEMENT        = "Bluetooth audio sink is discoverable for " +
+            DISCOVERABLE_TIMEOUT_MS + " milliseconds. Look for a device named " + ADAPTER_FRIENDLY_NAME;
+    private static final String DISCONNECTING_ANNOUNCEMENT       = "Disconnecting devices";
 
     private PeripheralManagerService mGPIOService         = new PeripheralManagerService();
-    private ButtonInputDriver        mBtnDriver           = null;
+    private ButtonInput              mButton              = null;
+    private final InputLatency       mInputLatency        = new InputLatency();
+    private HandlerThread            mWorkerThread        = null;
+    private Handler                  mWorkerHandler       = null;
     private Nokia5110                mNokia5110           = null;
+    private FrameTraceRecorder       mFrameTrace          = null;
+    private StatusRow                mNetworkRow          = null;
+    private StatusRow                mDeviceRow           = null;
+    private StatusRow                mPlaybackRow         = null;
+    private Spinner                  mPlaybackSpinner     = null;
+    private Bar                      mVolumeBar           = null;
 
     private BluetoothAdapter         mBluetoothAdapter    = null;
     private BluetoothProfile         mA2DPSinkProxy       = null;
+    private A2dpSinkAccessor         mA2DPSinkAccessor    = null;
     private android.widget.Button    mPairingButton       = null;
     private android.widget.Button    mDisconnectAllButton = null;
     private TextToSpeech             mTtsEngine           = null;
-    private Handler                  mHandler             = new Handler();
-    private Runnable                 mIPUpdateRunnable    = new Runnable() {
-        @Override
-        public void run() {
-            updateIpAddress();
-        }
-    };
+    private AnnouncementCache        mAnnouncements       = null;
+    private NetworkMonitor           mNetworkMonitor      = null;
+    private BluetoothMonitor         mBluetoothMonitor    = null;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -80,9 +92,9 @@ public class MainActivity extends Activity {
         }
 
         initTts();
-        registerReceiver(mAdapterStateChangeReceiver, new IntentFilter(BluetoothAdapter.ACTION_STATE_CHANGED));
-        registerReceiver(mSinkProfileStateChangeReceiver, new IntentFilter(A2dpSinkHelper.ACTION_CONNECTION_STATE_CHANGED));
-        registerReceiver(mSinkProfilePlaybackChangeReceiver, new IntentFilter(A2dpSinkHelper.ACTION_PLAYING_STATE_CHANGED));
+        mBluetoothMonitor = new BluetoothMonitor(this);
+        mBluetoothMonitor.addListener(mBluetoothListener);
+        mBluetoothMonitor.start();
 
         if (mBluetoothAdapter.isEnabled()) {
             Log.d(TAG, "Bluetooth Adapter is already enabled.");
@@ -92,28 +104,43 @@ public class MainActivity extends Activity {
             mBluetoothAdapter.enable();
         }
 
+        // Blocking calls made for the button, never on the main thread
+        mWorkerThread = new HandlerThread(TAG + "_Worker", Process.THREAD_PRIORITY_BACKGROUND);
+        mWorkerThread.start();
+        mWorkerHandler = new Handler(mWorkerThread.getLooper());
         configureButton();
         configureNokia5110();
+        mNetworkMonitor = new NetworkMonitor(this, new NetworkMonitor.Listener() {
+            @Override
+            public void onNetworkChanged(NetworkMonitor.Status status) {
+                updateNetworkStatus(status);
+            }
+        });
     }
 
     @Override
     protected void onStart() {
         super.onStart();
-        mHandler.postDelayed(mIPUpdateRunnable, 5000);
+        if (mNetworkMonitor != null) {
+            mNetworkMonitor.start();
+        }
     }
 
     @Override
     protected void onStop() {
         super.onStop();
-        mHandler.removeCallbacks(mIPUpdateRunnable);
+        if (mNetworkMonitor != null) {
+            mNetworkMonitor.stop();
+        }
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        unregisterReceiver(mAdapterStateChangeReceiver);
-        unregisterReceiver(mSinkProfileStateChangeReceiver);
-        unregisterReceiver(mSinkProfilePlaybackChangeReceiver);
+        if (mBluetoothMonitor != null) {
+            mBluetoothMonitor.removeListener(mBluetoothListener);
+            mBluetoothMonitor.stop();
+        }
 
         if (mA2DPSinkProxy != null) {
             mBluetoothAdapter.closeProfileProxy(A2dpSinkHelper.A2DP_SINK_PROFILE, mA2DPSinkProxy);
@@ -122,10 +149,16 @@ public class MainActivity extends Activity {
         if (mTtsEngine != null) {
             mTtsEngine.stop();
             mTtsEngine.shutdown();
+            mAnnouncements = null;
         }
 
         deconfigureButton();
         deconfigureNokia5110();
+        if (mWorkerThread != null) {
+            mWorkerThread.quitSafely();
+            mWorkerThread = null;
+            mWorkerHandler = null;
+        }
     }
 
     @Override
@@ -144,46 +177,20 @@ public class MainActivity extends Activity {
                     " and pair for the next " + DISCOVERABLE_TIMEOUT_MS + " ms. " +
                     "Try looking for it on your phone, for example.");
 
-            speak("Bluetooth audio sink is discoverable for " + DISCOVERABLE_TIMEOUT_MS +
-                    " milliseconds. Look for a device named " + ADAPTER_FRIENDLY_NAME);
-
-        }
-    }
-
-    @Override
-    public boolean onKeyDown(int keyCode, KeyEvent event) {
-        switch (keyCode) {
-            case KEYCODE_0:{
-                Log.i(TAG, "[onKeyDown] KEYCODE_0");
-                event.startTracking();
-            } return true;
-        }
-        return super.onKeyDown(keyCode, event);
-    }
+            speak(DISCOVERABLE_ANNOUNCEMENT);
 
-    @Override
-    public boolean onKeyUp(int keyCode, KeyEvent event) {
-        switch (keyCode) {
-            case KEYCODE_0:{
-                Log.i(TAG, "[onKeyUp] KEYCODE_0");
-                if (mNokia5110 != null) {
-                    mNokia5110.enableLighting(!mNokia5110.isLightingEnabled());
-                }
-            } return true;
         }
-        return super.onKeyUp(keyCode, event);
     }
 
     @Override
-    public boolean onKeyLongPress(int keyCode, KeyEvent event) {
-        switch (keyCode) {
-            case KEYCODE_0:{
-                Log.i(TAG, "[onKeyLongPress] wifi.reconnect()");
-                WifiManager wifi = (WifiManager) getSystemService(WIFI_SERVICE);
-                wifi.reconnect();
-            } break;
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        StringBuilder out = new StringBuilder(prefix).append("button BCM18").append('\n');
+        mInputLatency.dump(out, prefix + "  ", "\n");
+        writer.println(out);
+        if (mNokia5110 != null) {
+            mNokia5110.dump(prefix, writer);
         }
-        return super.onKeyLongPress(keyCode, event);
     }
 
     private void initA2DPSink() {
@@ -196,7 +203,10 @@ public class MainActivity extends Activity {
         mBluetoothAdapter.getProfileProxy(this, new BluetoothProfile.ServiceListener() {
             @Override
             public void onServiceConnected(int profile, BluetoothProfile proxy) {
-                mA2DPSinkProxy = proxy;
+                mA2DPSinkProxy    = proxy;
+                mA2DPSinkAccessor = new A2dpSinkAccessor(proxy);
+                mDisconnectAllButton.setEnabled(
+                        mA2DPSinkAccessor.hasCapabilities(A2dpSinkAccessor.CAPABILITY_DISCONNECT));
                 enableDiscoverable();
             }
             @Override
@@ -215,14 +225,15 @@ public class MainActivity extends Activity {
     }
 
     private void disconnectConnectedDevices() {
-        if (mA2DPSinkProxy == null || mBluetoothAdapter == null || !mBluetoothAdapter.isEnabled()) {
+        if (mA2DPSinkAccessor == null || mBluetoothAdapter == null || !mBluetoothAdapter.isEnabled()) {
             return;
         }
-        speak("Disconnecting devices");
-        for (BluetoothDevice device: mA2DPSinkProxy.getConnectedDevices()) {
-            Log.i(TAG, "Disconnecting device " + device);
-            A2dpSinkHelper.disconnect(mA2DPSinkProxy, device);
+        if (!mA2DPSinkAccessor.hasCapabilities(A2dpSinkAccessor.CAPABILITY_DISCONNECT)) {
+            Log.w(TAG, "Disconnecting devices is not supported by this platform");
+            return;
         }
+        speak(DISCONNECTING_ANNOUNCEMENT);
+        mA2DPSinkAccessor.disconnectAll();
     }
 
     private void initTts() {
@@ -232,6 +243,10 @@ public class MainActivity extends Activity {
                     public void onInit(int status) {
                         if (status == TextToSpeech.SUCCESS) {
                             mTtsEngine.setLanguage(Locale.US);
+                            mAnnouncements = new AnnouncementCache(new TextToSpeechEngine(mTtsEngine),
+                                    new File(getCacheDir(), ANNOUNCEMENT_DIRECTORY),
+                                    AnnouncementCache.DEFAULT_MAX_BYTES);
+                            prepareAnnouncements();
                         } else {
                             Log.w(TAG, "Could not open TTS Engine (onInit status=" + status
                                     + "). Ignoring text to speech");
@@ -241,17 +256,40 @@ public class MainActivity extends Activity {
                 });
     }
 
+    /**
+     * Synthesize what can be announced while nothing waits for it, the
+     * fixed messages and the ones naming the paired devices
+     */
+    private void prepareAnnouncements() {
+        mAnnouncements.prepare(DISCOVERABLE_ANNOUNCEMENT, DISCONNECTING_ANNOUNCEMENT);
+        if (mBluetoothAdapter != null) {
+            for (BluetoothDevice device : mBluetoothAdapter.getBondedDevices()) {
+                prepareDeviceAnnouncements(device.getName());
+            }
+        }
+    }
+
+    private void prepareDeviceAnnouncements(String name) {
+        if (mAnnouncements != null) {
+            String deviceName = Objects.toString(name, "a device");
+            mAnnouncements.prepare("Connected to " + deviceName, "Disconnected from " + deviceName);
+        }
+    }
+
     private void speak(String utterance) {
         Log.i(TAG, utterance);
-        if (mTtsEngine != null) {
+        if (mAnnouncements != null) {
+            mAnnouncements.announce(utterance);
+        } else if (mTtsEngine != null) {
             mTtsEngine.speak(utterance, TextToSpeech.QUEUE_ADD, null, UTTERANCE_ID);
         }
     }
 
     private void configureButton() {
         try {
-            mBtnDriver = new ButtonInputDriver("BCM18", Button.LogicState.PRESSED_WHEN_HIGH, KEYCODE_0);
-            mBtnDriver.register();
+            mButton = new ButtonInput("BCM18", true, mButtonListener, new Handler(Looper.getMainLooper()));
+            mButton.setLatency(mInputLatency);
+            mButton.open();
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -264,81 +302,175 @@ public class MainActivity extends Activity {
         final String RST = "BCM17";
         final String BL  = "BCM25";
         mNokia5110 = new Nokia5110(BUS, DC, CS, RST, BL);
+        // Set before open() so the trace starts with the setup of the panel,
+        // pull it with "adb pull <files dir>/traces" and replay it on the host
+        mFrameTrace = new FrameTraceRecorder(new File(getFilesDir(), TRACE_DIRECTORY), "nokia5110",
+                FrameTraceRecorder.DEFAULT_FILE_BYTES, FrameTraceRecorder.DEFAULT_FILES,
+                mNokia5110.getWidth(), mNokia5110.getHeight());
+        mNokia5110.setTraceRecorder(mFrameTrace);
         mNokia5110.open();
+
+        // Four rows of the 84x48 panel, the model values only change the widgets
+        final int ROW = 12;
+        WidgetGroup statusScreen = new WidgetGroup(0, 0, mNokia5110.getWidth(), mNokia5110.getHeight());
+        mNetworkRow  = new StatusRow(0, 0, mNokia5110.getWidth(), ROW);
+        mDeviceRow   = new StatusRow(0, ROW, mNokia5110.getWidth(), ROW);
+        // Room at the end of the playback row for the spinner going round while playing
+        mPlaybackRow = new StatusRow(0, ROW * 2, mNokia5110.getWidth() - ROW, ROW);
+        mPlaybackSpinner = new Spinner(mNokia5110.getWidth() - ROW, ROW * 2, ROW, ROW);
+        mVolumeBar   = new Bar(0, ROW * 3 + 2, mNokia5110.getWidth(), ROW - 4);
+        // An address wider than the row loses its start, not the part telling it apart
+        mNetworkRow.getLabel().setAlign(TextBlockCache.ALIGN_RIGHT);
+        mNetworkRow.setImage(Icons.OFFLINE);
+        mNetworkRow.setText("No network");
+        mDeviceRow.setImage(Icons.BLUETOOTH);
+        mDeviceRow.setText("No device");
+        mPlaybackRow.setImage(Icons.STOP);
+        mPlaybackRow.setText("Stopped");
+        statusScreen.addChild(mNetworkRow);
+        statusScreen.addChild(mDeviceRow);
+        statusScreen.addChild(mPlaybackRow);
+        statusScreen.addChild(mPlaybackSpinner);
+        statusScreen.addChild(mVolumeBar);
+        updateVolume();
+        mNokia5110.setWidgets(statusScreen);
     }
 
     private void deconfigureButton() {
-        if (mBtnDriver != null) {
-            mBtnDriver.unregister();
+        if (mButton != null) {
+            mButton.close();
+            mButton = null;
         }
     }
 
     private void deconfigureNokia5110() {
         mNokia5110.close();
         mNokia5110 = null;
+        mFrameTrace.close();
+        mFrameTrace = null;
+        mNetworkRow = null;
+        mDeviceRow = null;
+        mPlaybackRow = null;
+        mPlaybackSpinner = null;
+        mVolumeBar = null;
     }
 
-    private void updateIpAddress() {
-        WifiManager wifi = (WifiManager) getSystemService(WIFI_SERVICE);
-        int ip = wifi.getConnectionInfo().getIpAddress();
+    private void updateNetworkStatus(NetworkMonitor.Status status) {
+        boolean online = status.connected && status.address != null;
         TextView txvNetwork = (TextView) findViewById(R.id.TextView_Network);
-        String ipAddress = NetworkUtils.intToInetAddress(ip).getHostAddress();
-        txvNetwork.setText(ipAddress);
-        if (mNokia5110 != null) {
-            mNokia5110.drawText(0, 0, ipAddress);
-            mNokia5110.testLCD();
+        txvNetwork.setText(status.toString());
+        if (mNetworkRow != null) {
+            mNetworkRow.setImage(online ? Icons.WIFI : Icons.OFFLINE);
+            mNetworkRow.setText(online ? status.address : "No network");
         }
     }
 
-    private final BroadcastReceiver mAdapterStateChangeReceiver = new BroadcastReceiver() {
-        public void onReceive(Context context, Intent intent) {
-            int oldState = A2dpSinkHelper.getPreviousAdapterState(intent);
-            int newState = A2dpSinkHelper.getCurrentAdapterState(intent);
-            Log.d(TAG, "Bluetooth Adapter changing state from " + oldState + " to " + newState);
-            if (newState == BluetoothAdapter.STATE_ON) {
-                Log.i(TAG, "Bluetooth Adapter is ready");
-                initA2DPSink();
+    private void updateVolume() {
+        AudioManager audio = (AudioManager) getSystemService(AUDIO_SERVICE);
+        if (mVolumeBar != null && audio != null) {
+            mVolumeBar.animateTo(audio.getStreamVolume(AudioManager.STREAM_MUSIC),
+                    audio.getStreamMaxVolume(AudioManager.STREAM_MUSIC), VOLUME_SLIDE_DURATION);
+        }
+    }
+
+    private void updateDeviceStatus(BluetoothMonitor.DeviceState previous, BluetoothMonitor.DeviceState current) {
+        String deviceName = Objects.toString(current.name, "a device");
+        if (current.isConnected() != previous.isConnected()) {
+            speak((current.isConnected() ? "Connected to " : "Disconnected from ") + deviceName);
+            // A device connecting for the first time is announced live, only that once
+            prepareDeviceAnnouncements(current.name);
+            if (mDeviceRow != null) {
+                mDeviceRow.setText(current.isConnected() ? deviceName : "No device");
             }
         }
-    };
+        if (mPlaybackRow != null) {
+            if (current.isPlaying()) {
+                mPlaybackRow.setImage(Icons.PLAY);
+                mPlaybackRow.setText("Playing");
+                mPlaybackRow.getIcon().setBlinking(0);
+            } else if (current.isConnected() && previous.isPlaying()) {
+                mPlaybackRow.setImage(Icons.PAUSE);
+                mPlaybackRow.setText("Paused");
+                mPlaybackRow.getIcon().setBlinking(PAUSE_BLINK_PERIOD);
+            } else if (!current.isConnected()) {
+                mPlaybackRow.setImage(Icons.STOP);
+                mPlaybackRow.setText("Stopped");
+                mPlaybackRow.getIcon().setBlinking(0);
+            }
+            mPlaybackSpinner.setSpinning(current.isPlaying());
+        }
+        updateVolume();
+    }
 
-    private final BroadcastReceiver mSinkProfileStateChangeReceiver = new BroadcastReceiver() {
-        public void onReceive(Context context, Intent intent) {
-            if (intent.getAction().equals(A2dpSinkHelper.ACTION_CONNECTION_STATE_CHANGED)) {
-                int oldState = A2dpSinkHelper.getPreviousProfileState(intent);
-                int newState = A2dpSinkHelper.getCurrentProfileState(intent);
-                BluetoothDevice device = A2dpSinkHelper.getDevice(intent);
-                Log.d(TAG, "Bluetooth A2DP sink changing connection state from " + oldState +
-                        " to " + newState + " device " + device);
-                if (device != null) {
-                    String deviceName = Objects.toString(device.getName(), "a device");
-                    if (newState == BluetoothProfile.STATE_CONNECTED) {
-                        speak("Connected to " + deviceName);
-                    } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
-                        speak("Disconnected from " + deviceName);
-                    }
+    private final ButtonInput.Listener mButtonListener = new ButtonInput.Listener() {
+        @Override
+        public void onButtonDown(long edgeNanos) {
+            Log.i(TAG, "[onButtonDown] BCM18");
+        }
+
+        @Override
+        public void onButtonLongPress(long eventNanos) {
+            Log.i(TAG, "[onButtonLongPress] wifi.reconnect()");
+            Handler worker = mWorkerHandler;
+            if (worker == null) {
+                return;
+            }
+
+            // A second long press while still reconnecting changes nothing to time
+            if (mNokia5110 != null && mNetworkRow != null
+                    && !Widget.contentEquals(mNetworkRow.getLabel().getText(), "Reconnecting")) {
+                mNokia5110.traceInput(eventNanos);
+                mNetworkRow.setText("Reconnecting");
+            }
+            worker.post(new Runnable() {
+                @Override
+                public void run() {
+                    WifiManager wifi = (WifiManager) getSystemService(WIFI_SERVICE);
+                    wifi.reconnect();
                 }
+            });
+        }
+
+        @Override
+        public void onButtonUp(long edgeNanos, boolean longPress) {
+            // A long press did its own thing
+            if (longPress || mNokia5110 == null) {
+                return;
             }
+
+            mNokia5110.enableLighting(!mNokia5110.isLightingEnabled());
+            long now = SystemClock.elapsedRealtimeNanos();
+            mInputLatency.onBacklightChanged(edgeNanos, now);
+            Log.i(TAG, "[onButtonUp] BCM18, backlight " + (now - edgeNanos) / 1000 + "us after the edge");
         }
     };
 
-    private final BroadcastReceiver mSinkProfilePlaybackChangeReceiver = new BroadcastReceiver() {
-        public void onReceive(Context context, Intent intent) {
-            if (intent.getAction().equals(A2dpSinkHelper.ACTION_PLAYING_STATE_CHANGED)) {
-                int oldState = A2dpSinkHelper.getPreviousProfileState(intent);
-                int newState = A2dpSinkHelper.getCurrentProfileState(intent);
-                BluetoothDevice device = A2dpSinkHelper.getDevice(intent);
-                Log.d(TAG, "Bluetooth A2DP sink changing playback state from " + oldState +
-                        " to " + newState + " device " + device);
-                if (device != null) {
-                    if (newState == A2dpSinkHelper.STATE_PLAYING) {
-                        Log.i(TAG, "Playing audio from device " + device.getAddress());
-                    } else if (newState == A2dpSinkHelper.STATE_NOT_PLAYING) {
-                        Log.i(TAG, "Stopped playing audio from " + device.getAddress());
+    private final BluetoothMonitor.Listener mBluetoothListener = new BluetoothMonitor.Listener() {
+        @Override
+        public void onAdapterStateChanged(int previousState, int state) {
+            Log.d(TAG, "Bluetooth Adapter changing state from " + previousState + " to " + state);
+            if (state == BluetoothAdapter.STATE_ON) {
+                Log.i(TAG, "Bluetooth Adapter is ready");
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        initA2DPSink();
                     }
-                }
+                });
             }
         }
+
+        @Override
+        public void onDeviceChanged(final BluetoothMonitor.DeviceState previous,
+                                    final BluetoothMonitor.DeviceState current) {
+            // Already merged on the monitor thread, only the outcome reaches the main thread
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    updateDeviceStatus(previous, current);
+                }
+            });
+        }
     };
 
     public native String stringFromJNI();
@@ -0,0 +1,137 @@
+package com.cocoonshu.example.pilauncher;
+
+/**
+ * Text scrolling horizontally through a window of the frame.
+ * The whole string is rendered once into an off-screen strip, a TextBlock of
+ * the TextBlockCache, and every step only clears the window and blits the
+ * visible columns of the strip at the new offset, so a step touches the banks
+ * under the window and nothing else. The offset follows the elapsed time at
+ * the configured speed, a late step catches up instead of slowing down. Text
+ * fitting in the window is drawn once and doesn't scroll.
+ * @Author Cocoonshu
+ * @Date 2017-05-19
+ */
+public class Marquee {
+    public static final int DEFAULT_SPEED = 20;
+    public static final int DEFAULT_GAP   = 16;
+
+    private static final long MILLIS_PER_SEC = 1000;
+
+    private final int                mX;
+    private final int                mY;
+    private final int                mWidth;
+    private final CharSequence       mText;
+    private final int                mSpeed;
+    private final int                mGap;
+    private TextBlockCache.TextBlock mBlock     = null;
+    private long                     mStartTime = 0;
+    private int                      mOffset    = -1;
+
+    /**
+     * @param x     left of the window
+     * @param y     baseline of the text, like drawText
+     * @param width width of the window
+     * @param speed pixels per second, 0 to keep the text still
+     * @param gap   blank pixels between the end of the text and its next round
+     */
+    public Marquee(int x, int y, int width, CharSequence text, int speed, int gap) {
+        mX     = x;
+        mY     = y;
+        mWidth = width;
+        mText  = text;
+        mSpeed = Math.max(speed, 0);
+        mGap   = Math.max(gap, 0);
+    }
+
+    public int getX() {
+        return mX;
+    }
+
+    public int getY() {
+        return mY;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public CharSequence getText() {
+        return mText;
+    }
+
+    public int getSpeed() {
+        return mSpeed;
+    }
+
+    /**
+     * Attach the rendered text and restart from the beginning of it
+     */
+    public void start(TextBlockCache.TextBlock block, long now) {
+        mBlock     = block;
+        mStartTime = now;
+        mOffset    = -1;
+    }
+
+    public boolean isScrolling() {
+        return mBlock != null && mSpeed > 0 && mBlock.advance > mWidth;
+    }
+
+    private int getPeriod() {
+        return mBlock.advance + mGap;
+    }
+
+    /**
+     * Move the offset to where it should be at now
+     * @return true if the window has to be drawn again
+     */
+    public boolean update(long now) {
+        int offset = 0;
+        if (isScrolling()) {
+            offset = (int) ((now - mStartTime) * mSpeed / MILLIS_PER_SEC % getPeriod());
+        }
+        if (offset == mOffset) {
+            return false;
+        }
+        mOffset = offset;
+        return true;
+    }
+
+    /**
+     * @return the time the offset moves by the next pixel, Long.MAX_VALUE if it never does
+     */
+    public long getNextStepTime(long now) {
+        if (!isScrolling()) {
+            return Long.MAX_VALUE;
+        }
+        long steps = (now - mStartTime) * mSpeed / MILLIS_PER_SEC + 1;
+        return mStartTime + (steps * MILLIS_PER_SEC + mSpeed - 1) / mSpeed;
+    }
+
+    /**
+     * Replace the window content with the text at the current offset
+     */
+    public void draw(FrameBuffer frame) {
+        if (mBlock == null) {
+            return;
+        }
+
+        int top = mY + mBlock.top;
+        frame.clearRect(mX, top, mWidth, mBlock.rows);
+        drawRound(frame, top, -Math.max(mOffset, 0));
+        if (isScrolling()) {
+            drawRound(frame, top, getPeriod() - Math.max(mOffset, 0));
+        }
+    }
+
+    /**
+     * Draw the strip with its first column at start, relative to the window, clipped to the window
+     */
+    private void drawRound(FrameBuffer frame, int top, int start) {
+        FrameBuffer strip = mBlock.bitmap;
+        int from = Math.max(-start, 0);
+        int to   = Math.min(mBlock.advance, mWidth - start);
+        if (from < to) {
+            frame.blit(strip.getBytes(), strip.getWidth(), mBlock.rows, from, to - from, mX + start + from, top, FrameBuffer.OP_SET);
+        }
+    }
+}
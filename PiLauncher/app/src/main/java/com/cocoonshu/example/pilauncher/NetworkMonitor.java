@@ -0,0 +1,201 @@
+package com.cocoonshu.example.pilauncher;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.net.NetworkUtils;
+import android.net.wifi.WifiInfo;
+import android.net.wifi.WifiManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.Objects;
+
+/**
+ * Network status pushed by the system instead of polled.
+ * The connectivity and Wi-Fi broadcasts are received on a thread of the
+ * monitor, each one restarting a debounce delay, and the status is only read
+ * once the broadcasts settle, so a link flapping through its states while
+ * associating is read once. The listener is called on the main thread, and
+ * only when the link state, the SSID or the address actually changed.
+ * @Author Cocoonshu
+ * @Date 2017-05-24
+ */
+public class NetworkMonitor {
+    public static final long DEFAULT_DEBOUNCE_MS = 500;
+
+    private static final String TAG          = "NetworkMonitor";
+    private static final String UNKNOWN_SSID = "<unknown ssid>";
+
+    /**
+     * Called on the main thread with the status following a change
+     */
+    public interface Listener {
+        void onNetworkChanged(Status status);
+    }
+
+    /**
+     * What the monitor reports, immutable
+     */
+    public static final class Status {
+        public final boolean connected;
+        public final String  ssid;
+        public final String  address;
+
+        Status(boolean connected, String ssid, String address) {
+            this.connected = connected;
+            this.ssid      = ssid;
+            this.address   = address;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof Status)) {
+                return false;
+            }
+            Status other = (Status) object;
+            return connected == other.connected
+                    && Objects.equals(ssid, other.ssid)
+                    && Objects.equals(address, other.address);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(connected, ssid, address);
+        }
+
+        @Override
+        public String toString() {
+            if (!connected) {
+                return "disconnected";
+            }
+            return (ssid != null ? ssid : "connected") + " " + (address != null ? address : "no address");
+        }
+    }
+
+    private final Context     mContext;
+    private final Listener    mListener;
+    private final Handler     mMainHandler = new Handler(Looper.getMainLooper());
+    private volatile long     mDebounce    = DEFAULT_DEBOUNCE_MS;
+    private HandlerThread     mThread      = null;
+    private volatile Handler  mHandler     = null;
+    private volatile Status   mStatus      = null;
+
+    private final Runnable mSampleRunnable = new Runnable() {
+        @Override
+        public void run() {
+            sampleInner();
+        }
+    };
+
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            Handler handler = mHandler;
+            if (handler != null) {
+                handler.removeCallbacks(mSampleRunnable);
+                handler.postDelayed(mSampleRunnable, mDebounce);
+            }
+        }
+    };
+
+    public NetworkMonitor(Context context, Listener listener) {
+        mContext  = context.getApplicationContext();
+        mListener = listener;
+    }
+
+    /**
+     * Start listening, the listener getting the current status first
+     */
+    public void start() {
+        if (mThread != null) {
+            return;
+        }
+
+        mThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+        mStatus  = null;
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(ConnectivityManager.CONNECTIVITY_ACTION);
+        filter.addAction(WifiManager.NETWORK_STATE_CHANGED_ACTION);
+        filter.addAction(WifiManager.WIFI_STATE_CHANGED_ACTION);
+        mContext.registerReceiver(mReceiver, filter, null, mHandler);
+        mHandler.post(mSampleRunnable);
+        Log.i(TAG, "[start]");
+    }
+
+    public void stop() {
+        if (mThread == null) {
+            return;
+        }
+
+        mContext.unregisterReceiver(mReceiver);
+        mHandler.removeCallbacks(mSampleRunnable);
+        mHandler = null;
+        mThread.quitSafely();
+        mThread = null;
+        Log.i(TAG, "[stop]");
+    }
+
+    /**
+     * @param debounceMillis quiet time after the last broadcast before the status is read
+     */
+    public void setDebounce(long debounceMillis) {
+        mDebounce = debounceMillis;
+    }
+
+    /**
+     * @return the last status reported, null before the first one
+     */
+    public Status getStatus() {
+        return mStatus;
+    }
+
+    private void sampleInner() {
+        Status status = readStatus();
+        if (status.equals(mStatus)) {
+            return;
+        }
+
+        Log.i(TAG, "[sampleInner] " + mStatus + " -> " + status);
+        mStatus = status;
+        final Status changed = status;
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mListener.onNetworkChanged(changed);
+            }
+        });
+    }
+
+    private Status readStatus() {
+        ConnectivityManager connectivity = (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        WifiManager         wifi         = (WifiManager) mContext.getSystemService(Context.WIFI_SERVICE);
+        NetworkInfo network   = connectivity != null ? connectivity.getActiveNetworkInfo() : null;
+        boolean     connected = network != null && network.isConnected();
+        if (!connected || wifi == null) {
+            return new Status(false, null, null);
+        }
+
+        WifiInfo info    = wifi.getConnectionInfo();
+        int      ip      = info != null ? info.getIpAddress() : 0;
+        String   ssid    = info != null ? info.getSSID() : null;
+        String   address = ip != 0 ? NetworkUtils.intToInetAddress(ip).getHostAddress() : null;
+        if (ssid != null) {
+            if (UNKNOWN_SSID.equals(ssid)) {
+                ssid = null;
+            } else if (ssid.length() > 1 && ssid.startsWith("\"") && ssid.endsWith("\"")) {
+                ssid = ssid.substring(1, ssid.length() - 1);
+            }
+        }
+        return new Status(true, ssid, address);
+    }
+}
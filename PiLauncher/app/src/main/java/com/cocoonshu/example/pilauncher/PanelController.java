@@ -0,0 +1,59 @@
+package com.cocoonshu.example.pilauncher;
+
+/**
+ * What a display driver has to know about a panel controller: its geometry,
+ * the command sequence bringing it up after a reset and the commands moving
+ * its data pointer. Frames are in the bank layout of FrameBuffer, which every
+ * supported controller takes as it is: a byte per column and bank, bit n being
+ * row n of the bank, the data pointer running along a bank and wrapping into
+ * the next one.
+ * @Author Cocoonshu
+ * @Date 2017-05-20
+ */
+public abstract class PanelController {
+    private static final int BitPerBank = 8;
+
+    private final String mName;
+    private final int    mWidth;
+    private final int    mHeight;
+
+    protected PanelController(String name, int width, int height) {
+        if (width <= 0 || height <= 0 || height % BitPerBank != 0) {
+            throw new IllegalArgumentException("Invalid panel size " + width + "x" + height);
+        }
+        mName   = name;
+        mWidth  = width;
+        mHeight = height;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getBanks() {
+        return mHeight / BitPerBank;
+    }
+
+    /**
+     * Append the commands bringing the panel from reset to displaying its RAM
+     */
+    public abstract void writeInit(CommandBatch batch);
+
+    /**
+     * Append the commands pointing the next data byte at column of bank
+     */
+    public abstract void writeAddress(CommandBatch batch, int bank, int column);
+
+    /**
+     * @return the number of bytes writeAddress appends
+     */
+    public abstract int getAddressBytes();
+}
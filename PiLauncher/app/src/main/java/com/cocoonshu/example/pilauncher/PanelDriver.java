@@ -0,0 +1,1054 @@
+package com.cocoonshu.example.pilauncher;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorMatrixColorFilter;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Typeface;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.cocoonshu.example.pilauncher.DrawCommandQueue.DrawCommand;
+
+/**
+ * Display driver for the bank layout panels described by a PanelController.
+ * Drawing runs on a driver thread of its own, the frames and the setup go to
+ * the panel on the turns given by the BusArbiter of its SPI controller, which
+ * serializes them with the transfers of the other panels on the same bus.
+ * The draw calls reach the driver thread through a DrawCommandQueue, so the
+ * threads drawing neither allocate nor wait for the display, unless the queue
+ * policy is DrawCommandQueue.POLICY_BLOCK.
+ * @Author Cocoonshu
+ * @Date 2017-04-27
+ */
+public class PanelDriver {
+    private static final String TAG                  = "PanelDriver";
+    private static final int    COLOR_ZERO           = 0x00000000;
+    private static final float  FONT_SIZE            = 12;
+    private static final int    COMMAND_BYTES        = 32;
+    private static final int    QUEUE_CAPACITY       = 32;
+    private static final long   TEST_LCD_PERIOD      = 1000;
+
+    private static final int    MSG_TEST_LCD         = 0;
+    private static final int    MSG_DRAIN_COMMANDS   = 1;
+    private static final int    MSG_FLUSH_FRAME      = 2;
+    private static final int    MSG_MARQUEE_STEP     = 3;
+    private static final int    MSG_LOG_METRICS      = 4;
+    private static final int    MSG_RENDER_WIDGETS   = 5;
+    private static final int    MSG_ANIMATE          = 6;
+
+    // Alpha out of the weights of the packer luma, (r + 4g + b) / 6, color left out
+    private static final float[] LUMA_TO_ALPHA = {
+            0,      0,      0,      0, 0,
+            0,      0,      0,      0, 0,
+            0,      0,      0,      0, 0,
+            1 / 6f, 4 / 6f, 1 / 6f, 0, 0
+    };
+
+    private final PanelController       mController;
+    private final BusArbiter            mArbiter;
+    private int                         mPriority        = BusArbiter.PRIORITY_NORMAL;
+    private final AtomicBoolean         mSetupPending    = new AtomicBoolean(false);
+    private FrameBuffer                 mFrameBuffer     = null;
+    private TripleBuffer                mTripleBuffer    = null;
+    private FrameFlusher                mFrameFlusher    = null;
+    private FrameScheduler              mScheduler       = new FrameScheduler();
+    private CommandBatch                mCommands        = null;
+    private volatile int                mLastSaved       = 0;
+    private volatile long               mTotalSaved      = 0;
+    private Bitmap                      mDrawingCache    = null;
+    private Canvas                      mDrawingCanvas   = null;
+    private ByteBuffer                  mSurfacePixels   = null;
+    private int                         mSurfaceReady    = -1;
+    private volatile int                mSurfaceFormat   = PixelPacker.FORMAT_ALPHA_8;
+    private Paint                       mLumaPaint       = null;
+    private Paint                       mCoveragePaint   = null;
+    private PixelPacker                 mPixelPacker     = null;
+    private volatile int                mDitherMode      = PixelPacker.MODE_THRESHOLD;
+    private GlyphAtlas                  mGlyphAtlas      = null;
+    private TextBlockCache              mTextCache       = null;
+    private final ArrayList<Marquee>    mMarquees        = new ArrayList<>();
+    private volatile boolean            mEnabled         = false;
+    private HandlerThread               mDriverThread    = null;
+    private volatile Handler            mDriverHandler   = null;
+    private volatile DrawCommandQueue   mCommandQueue    = null;
+    private volatile int                mQueuePolicy     = DrawCommandQueue.POLICY_COALESCE;
+    private final AtomicBoolean         mDrainPosted     = new AtomicBoolean(false);
+    private final DrawCommand           mCommand         = new DrawCommand();
+    private WidgetGroup                 mWidgets         = null;
+    private final Widget.DrawContext    mDrawContext     = new Widget.DrawContext();
+    private final AtomicBoolean         mRenderPosted    = new AtomicBoolean(false);
+    private final AnimationClock        mAnimationClock  = new AnimationClock();
+    private final AtomicLong            mInputMark       = new AtomicLong(0);
+    private long                        mRenderedInput   = 0;
+    private final AtomicLong            mPublishedInput  = new AtomicLong(0);
+    private ShadowedBus                 mBus             = null;
+    private final WireTap               mWireTap;
+    private volatile FrameTraceRecorder mTraceRecorder   = null;
+    private final Object                mDelayLock       = new Object();
+    private final DriverMetrics         mMetrics         = new DriverMetrics();
+    private volatile long               mMetricsInterval = 0;
+
+    private final BusArbiter.Client mTransferClient = new BusArbiter.Client() {
+        @Override
+        public void onTransfer() {
+            transferInner();
+        }
+    };
+
+    private final WidgetGroup.Host mWidgetHost = new WidgetGroup.Host() {
+        @Override
+        public void onInvalidated() {
+            Handler handler = mDriverHandler;
+            if (handler != null && !mRenderPosted.getAndSet(true)) {
+                handler.sendEmptyMessage(MSG_RENDER_WIDGETS);
+            }
+        }
+
+        @Override
+        public void onAnimationStarted() {
+            postAnimate();
+        }
+    };
+
+    /**
+     * @param bus     lines to drive the panel through, AndroidThingsBus on the board
+     *                or SimulatedBus to run without a panel
+     * @param arbiter arbiter of the SPI controller, shared with the other panels on it
+     */
+    public PanelDriver(PanelController controller, DisplayBus bus, BusArbiter arbiter) {
+        mController = controller;
+        mArbiter    = arbiter;
+        // Under the shadows, so the trace sees the DC level of each write as the panel does
+        mWireTap    = new WireTap(bus);
+        mBus        = new ShadowedBus(mWireTap);
+    }
+
+    private void handleDriverMessage(Message message) {
+        switch (message.what) {
+            case MSG_TEST_LCD:       { Log.i(TAG, "[handleDriverMessage] MSG_TEST_LCD"); testLCDInner(); scheduleTestLCDInner(); mTestWord++;} break;
+            case MSG_DRAIN_COMMANDS: { drainCommandsInner(); } break;
+            case MSG_FLUSH_FRAME:    { flushFrameInner(); } break;
+            case MSG_MARQUEE_STEP:   { stepMarqueesInner(); } break;
+            case MSG_LOG_METRICS:    { logMetricsInner(); } break;
+            case MSG_RENDER_WIDGETS: { renderWidgetsInner(); } break;
+            case MSG_ANIMATE:        { animateInner(); } break;
+        }
+    }
+
+    private void handleCommand(DrawCommand command) {
+        switch (command.type) {
+            case DrawCommandQueue.TYPE_CLEAR:       { Log.i(TAG, "[handleCommand] TYPE_CLEAR");       clearScreenInner(); } break;
+            case DrawCommandQueue.TYPE_DRAW_TEXT:   { Log.i(TAG, "[handleCommand] TYPE_DRAW_TEXT");   drawTextInner(command.x, command.y, command.arg, (CharSequence) command.payload); } break;
+            case DrawCommandQueue.TYPE_DRAW_BITMAP: { Log.i(TAG, "[handleCommand] TYPE_DRAW_BITMAP"); drawBitmapInner((Bitmap) command.payload); } break;
+            case DrawCommandQueue.TYPE_SCROLL_TEXT: { Log.i(TAG, "[handleCommand] TYPE_SCROLL_TEXT"); scrollTextInner(new Marquee(command.x, command.y, command.width, (CharSequence) command.payload, command.arg, Marquee.DEFAULT_GAP)); } break;
+            case DrawCommandQueue.TYPE_STOP_SCROLL: { Log.i(TAG, "[handleCommand] TYPE_STOP_SCROLL"); stopScrollInner(); } break;
+            case DrawCommandQueue.TYPE_TEST_LCD:    { Log.i(TAG, "[handleCommand] TYPE_TEST_LCD");    scheduleTestLCDInner(); } break;
+            case DrawCommandQueue.TYPE_SET_WIDGETS: { Log.i(TAG, "[handleCommand] TYPE_SET_WIDGETS"); setWidgetsInner((WidgetGroup) command.payload); } break;
+        }
+    }
+
+    /**
+     * Run the queued commands, at most a queue full per message so the frame
+     * and marquee ticks don't wait behind a producer drawing without pause
+     */
+    private void drainCommandsInner() {
+        mDrainPosted.set(false);
+        DrawCommandQueue queue = mCommandQueue;
+        if (queue == null) {
+            return;
+        }
+
+        for (int i = 0; i < queue.getCapacity() && queue.poll(mCommand); i++) {
+            handleCommand(mCommand);
+            mCommand.payload = null;
+            mMetrics.onRendered((System.nanoTime() - mCommand.enqueueTime) / 1000, queue.size());
+        }
+        if (queue.size() > 0) {
+            postDrain();
+        }
+    }
+
+    /**
+     * Wake the driver thread up, once for all the commands queued until it runs
+     */
+    private void postDrain() {
+        Handler handler = mDriverHandler;
+        if (handler != null && !mDrainPosted.getAndSet(true)) {
+            handler.sendEmptyMessage(MSG_DRAIN_COMMANDS);
+        }
+    }
+
+    private void enqueue(int type, int x, int y, int width, int arg, Object payload) {
+        DrawCommandQueue queue = mCommandQueue;
+        if (queue == null || !queue.offer(type, x, y, width, arg, payload)) {
+            return;
+        }
+        mMetrics.onEnqueued(queue.size());
+        postDrain();
+    }
+
+    /**
+     * A turn on the bus given by the arbiter. Everything touching the bus runs
+     * here, so the driver thread can render the next frame while the previous
+     * one is on the wire.
+     */
+    private void transferInner() {
+        if (mSetupPending.getAndSet(false)) {
+            Log.i(TAG, "[transferInner] setup " + mController.getName());
+            lcdSetup();
+        }
+        transmitFrameInner();
+    }
+
+    private void lcdSetup() {
+        try {
+            if (!mEnabled) {
+                return;
+            }
+
+            mBus.setReset(true);
+            pulseDelay();
+            mBus.setReset(false);
+            mBus.setSelected(true);
+            pulseDelay();
+            mBus.setSelected(false);
+
+            mController.writeInit(mCommands);
+            mCommands.send(mBus);
+            clearScreen();
+        } catch (IOException exp) {
+            mEnabled = false;
+        }
+    }
+
+    private void pulseDelay() {
+        synchronized (mDelayLock) {
+            try {
+                mDelayLock.wait(0, 100);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public void enableLighting(boolean enabled) {
+        try {
+            if (!mEnabled) {
+                return;
+            }
+
+            Log.i(TAG, "[enableLighting] " + enabled);
+            mBus.setBacklight(enabled);
+        } catch (IOException exp) {
+            // Ignore
+        }
+    }
+
+    public boolean isLightingEnabled() {
+        try {
+            return mEnabled && mBus.isBacklightOn();
+        } catch (IOException exp) {
+            return false;
+        }
+    }
+
+    private void clearScreenInner() {
+        if (!mEnabled) {
+            return;
+        }
+
+        stopScrollInner();
+        mFrameBuffer.clear();
+        invalidateInner();
+        // The widgets outlive the screen they were drawn on
+        if (mWidgets != null) {
+            mWidgets.invalidate();
+        }
+    }
+
+    private void setWidgetsInner(WidgetGroup widgets) {
+        if (mWidgets == widgets) {
+            return;
+        }
+
+        if (mWidgets != null) {
+            mWidgets.setHost(null);
+            mFrameBuffer.clearRect(mWidgets.getX(), mWidgets.getY(), mWidgets.getWidth(), mWidgets.getHeight());
+            invalidateInner();
+        }
+        mWidgets = widgets;
+        if (widgets != null) {
+            widgets.setHost(mWidgetHost);
+            widgets.invalidate();
+            if (widgets.isAnimating()) {
+                postAnimate();
+            }
+        }
+    }
+
+    /**
+     * Wake the animations up, unless a step is already on its way
+     */
+    private void postAnimate() {
+        Handler handler = mDriverHandler;
+        if (handler != null && !handler.hasMessages(MSG_ANIMATE)) {
+            handler.sendEmptyMessage(MSG_ANIMATE);
+        }
+    }
+
+    /**
+     * Step the animated widgets once per step of the animation clock due, and
+     * redraw those which changed in the same render pass. The steps missed
+     * while the thread was busy are skipped, not caught up with, so the
+     * animations never hold back the commands and status changes queued
+     * behind them. The clock stops with the last animation.
+     */
+    private void animateInner() {
+        mDriverHandler.removeMessages(MSG_ANIMATE);
+        if (!mEnabled || mWidgets == null) {
+            mAnimationClock.stop();
+            return;
+        }
+
+        long now = SystemClock.uptimeMillis();
+        if (!mAnimationClock.isRunning()) {
+            mAnimationClock.start(now);
+        }
+        if (mAnimationClock.advance(now)) {
+            // The render below covers what the step invalidates, so the Host
+            // must not post one, and one already posted is superseded by it
+            if (mRenderPosted.getAndSet(true)) {
+                mDriverHandler.removeMessages(MSG_RENDER_WIDGETS);
+            }
+            boolean animating = mWidgets.animate(mAnimationClock.getTime());
+            renderWidgetsInner();
+            if (!animating) {
+                mAnimationClock.stop();
+                return;
+            }
+        }
+        mDriverHandler.sendEmptyMessageAtTime(MSG_ANIMATE, mAnimationClock.getNextStepTime());
+    }
+
+    /**
+     * Redraw the dirty widgets, one pass for all the changes made since the previous one
+     */
+    private void renderWidgetsInner() {
+        mRenderPosted.set(false);
+        if (!mEnabled || mWidgets == null) {
+            return;
+        }
+
+        // The input the changes being drawn were made for, the oldest one if several,
+        // dropped when they draw nothing so no later frame gets charged with it
+        long input = mInputMark.getAndSet(0);
+        mDrawContext.frame     = mFrameBuffer;
+        mDrawContext.atlas     = getGlyphAtlas();
+        mDrawContext.textCache = mTextCache;
+        mDrawContext.textSize  = FONT_SIZE;
+        if (mWidgets.render(mDrawContext)) {
+            if (input != 0 && mRenderedInput == 0) {
+                mRenderedInput = input;
+            }
+            invalidateInner();
+        }
+    }
+
+    /**
+     * The surface is read back as it is stored, 1 or 2 bytes a pixel, and
+     * packed in place from the direct buffer, by native-lib when it's loaded
+     */
+    private void flushBufferInner() {
+        mSurfacePixels.clear();
+        mDrawingCache.copyPixelsToBuffer(mSurfacePixels);
+        // What the copy wrote, then read once more by the packer
+        int copied = mSurfacePixels.position();
+        mPixelPacker.setMode(mDitherMode);
+        mPixelPacker.pack(mSurfacePixels, mSurfaceReady, mFrameBuffer);
+        mMetrics.onSurfaceRead(copied * 2);
+    }
+
+    /**
+     * Allocate the bitmap surface on the first drawBitmap(), or again when its format changed
+     */
+    private void prepareSurfaceInner() {
+        int format = mSurfaceFormat;
+        if (mDrawingCache != null && mSurfaceReady == format) {
+            return;
+        }
+
+        int width  = mController.getWidth();
+        int height = mController.getHeight();
+        if (mDrawingCache != null) {
+            mDrawingCache.recycle();
+        }
+        mDrawingCache = Bitmap.createBitmap(width, height,
+                format == PixelPacker.FORMAT_ALPHA_8 ? Bitmap.Config.ALPHA_8 : Bitmap.Config.RGB_565);
+        mDrawingCanvas = new Canvas(mDrawingCache);
+        if (format == PixelPacker.FORMAT_ALPHA_8 && mLumaPaint == null) {
+            mLumaPaint = new Paint();
+            mLumaPaint.setColorFilter(new ColorMatrixColorFilter(LUMA_TO_ALPHA));
+            mCoveragePaint = new Paint();
+            mCoveragePaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.DST_IN));
+        }
+        // copyPixelsToBuffer() copies the pixels as they are in memory
+        mSurfacePixels = ByteBuffer.allocateDirect(mDrawingCache.getByteCount()).order(ByteOrder.nativeOrder());
+        mSurfaceReady  = format;
+    }
+
+    private void drawBitmapInner(Bitmap bitmap) {
+        if (bitmap == null) {
+            return;
+        }
+
+        prepareSurfaceInner();
+        mDrawingCanvas.drawColor(COLOR_ZERO, PorterDuff.Mode.SRC);
+        if (mSurfaceReady == PixelPacker.FORMAT_ALPHA_8) {
+            // The luma as alpha, then times the alpha of the bitmap, the gray
+            // the bitmap has drawn over black on an RGB_565 surface
+            mDrawingCanvas.drawBitmap(bitmap, 0, 0, mLumaPaint);
+            mDrawingCanvas.drawBitmap(bitmap, 0, 0, mCoveragePaint);
+        } else {
+            mDrawingCanvas.drawBitmap(bitmap, 0, 0, null);
+        }
+        flushBufferInner();
+        invalidateInner();
+    }
+
+    private void drawTextInner(int x, int y, int align, CharSequence text) {
+        if (text == null) {
+            return;
+        }
+
+        mTextCache.drawText(mFrameBuffer, getGlyphAtlas(), FONT_SIZE, x, y, text, align);
+        invalidateInner();
+    }
+
+    private GlyphAtlas getGlyphAtlas() {
+        if (mGlyphAtlas == null) {
+            mGlyphAtlas = GlyphRasterizer.rasterize(Typeface.DEFAULT, FONT_SIZE);
+        }
+        return mGlyphAtlas;
+    }
+
+    private void scrollTextInner(Marquee marquee) {
+        if (marquee.getText() == null) {
+            return;
+        }
+
+        // A new marquee on the same line takes over from the previous one
+        for (int i = mMarquees.size() - 1; i >= 0; i--) {
+            if (mMarquees.get(i).getY() == marquee.getY()) {
+                mMarquees.remove(i);
+            }
+        }
+        TextBlockCache.TextBlock block = mTextCache.get(getGlyphAtlas(), FONT_SIZE, marquee.getText(), TextBlockCache.ALIGN_LEFT);
+        if (block == null) {
+            return;
+        }
+        marquee.start(block, SystemClock.uptimeMillis());
+        mMarquees.add(marquee);
+        stepMarqueesInner();
+    }
+
+    private void scheduleTestLCDInner() {
+        mDriverHandler.removeMessages(MSG_TEST_LCD);
+        mDriverHandler.sendEmptyMessageDelayed(MSG_TEST_LCD, TEST_LCD_PERIOD);
+    }
+
+    private void stopScrollInner() {
+        mMarquees.clear();
+        mDriverHandler.removeMessages(MSG_MARQUEE_STEP);
+    }
+
+    /**
+     * Redraw the windows of the marquees which moved, then wait for the next one to move
+     */
+    private void stepMarqueesInner() {
+        mDriverHandler.removeMessages(MSG_MARQUEE_STEP);
+        long now      = SystemClock.uptimeMillis();
+        long nextStep = Long.MAX_VALUE;
+        boolean dirty = false;
+        for (int i = 0; i < mMarquees.size(); i++) {
+            Marquee marquee = mMarquees.get(i);
+            if (marquee.update(now)) {
+                marquee.draw(mFrameBuffer);
+                dirty = true;
+            }
+            nextStep = Math.min(nextStep, marquee.getNextStepTime(now));
+        }
+        if (dirty) {
+            invalidateInner();
+        }
+        if (nextStep != Long.MAX_VALUE) {
+            mDriverHandler.sendEmptyMessageAtTime(MSG_MARQUEE_STEP, nextStep);
+        }
+    }
+
+    /**
+     * Mark the frame dirty, the first invalidation since the last flush schedules
+     * one at the next tick allowed by the frame rate, later ones merge into it
+     */
+    private void invalidateInner() {
+        if (mScheduler.invalidate()) {
+            long now = SystemClock.uptimeMillis();
+            mDriverHandler.sendEmptyMessageAtTime(MSG_FLUSH_FRAME, mScheduler.getNextFlushTime(now));
+        }
+    }
+
+    /**
+     * Publish a copy of the frame and ask for a turn on the bus. If the previous
+     * frame is still waiting or being sent, the copy waits in the triple buffer
+     * and drawing goes on.
+     */
+    private void flushFrameInner() {
+        if (mEnabled) {
+            mTripleBuffer.getBack().copyFrom(mFrameBuffer);
+            if (mRenderedInput != 0) {
+                mPublishedInput.compareAndSet(0, mRenderedInput);
+                mRenderedInput = 0;
+            }
+            mTripleBuffer.publish(SystemClock.elapsedRealtimeNanos());
+            mArbiter.requestTransfer(mTransferClient);
+        }
+        mScheduler.onFlushed(SystemClock.uptimeMillis());
+    }
+
+    private void transmitFrameInner() {
+        FrameBuffer frame = mTripleBuffer.acquire();
+        if (frame == null) {
+            return;
+        }
+
+        try {
+            flushDirtyInner(frame);
+            long now = SystemClock.elapsedRealtimeNanos();
+            mMetrics.onFrameSent((now - mTripleBuffer.getFrontTimestamp()) / 1000);
+            long input = mPublishedInput.getAndSet(0);
+            if (input != 0) {
+                mMetrics.onInputShown((now - input) / 1000);
+            }
+            recordFrameInner(now, frame);
+        } catch (IOException exp) {
+            // Ignore
+        }
+    }
+
+    /**
+     * Add the frame to the trace with what went on the wire since the previous
+     * one, the setup commands included for the first frame
+     */
+    private void recordFrameInner(long now, FrameBuffer frame) {
+        FrameTraceRecorder recorder = mTraceRecorder;
+        if (recorder != null && mWireTap.isCapturing()
+                && !recorder.record(now, frame, mWireTap.getCapture(), mWireTap.getCaptureSize())) {
+            // Closed by its owner, or stopped by a write error
+            if (recorder.getError() != null) {
+                Log.w(TAG, "[recordFrameInner] trace stopped: " + recorder.getError());
+            }
+            mTraceRecorder = null;
+            mWireTap.setCapturing(false);
+        }
+        mWireTap.reset();
+    }
+
+    private void logMetricsInner() {
+        long interval = mMetricsInterval;
+        if (interval <= 0) {
+            return;
+        }
+
+        StringBuilder out = new StringBuilder("[logMetrics] ");
+        appendMetrics(out, "", "; ");
+        Log.i(TAG, out.toString());
+        mDriverHandler.sendEmptyMessageDelayed(MSG_LOG_METRICS, interval);
+    }
+
+    private void appendMetrics(StringBuilder out, String prefix, String separator) {
+        long now = SystemClock.elapsedRealtimeNanos();
+        out.append(prefix).append(mController.getName()).append(' ')
+           .append(mController.getWidth()).append('x').append(mController.getHeight())
+           .append(mEnabled ? " enabled" : " disabled").append(separator);
+        out.append(prefix).append("frames: ").append(mMetrics.getFramesSent()).append(" sent, ")
+           .append(String.format("%.1f fps now, %.1f fps average", mMetrics.sampleFramesPerSecond(now),
+                   mMetrics.getAverageFramesPerSecond(now)))
+           .append(", ").append(getDroppedFrames()).append(" dropped").append(separator);
+        out.append(prefix).append("spi: ").append(mBus.getWrittenBytes()).append(" bytes in ")
+           .append(mBus.getTransfers()).append(" transfers, ").append(mTotalSaved).append(" bytes saved")
+           .append(separator);
+        out.append(prefix).append("gpio: ").append(mBus.getIssuedWrites()).append(" toggles, ")
+           .append(mBus.getElidedWrites()).append(" elided").append(separator);
+        out.append(prefix).append("surface: ").append(mMetrics.getSurfaceFrames()).append(" frames read back, ")
+           .append(mMetrics.getSurfaceBytesPerFrame()).append(" bytes touched/frame").append(separator);
+        out.append(prefix).append("animation: ").append(mAnimationClock.getFrames()).append(" frames at ")
+           .append(mAnimationClock.getFps()).append(" fps, ").append(mAnimationClock.getSkippedFrames())
+           .append(" skipped").append(separator);
+        FrameTraceRecorder recorder = mTraceRecorder;
+        if (recorder != null) {
+            out.append(prefix).append("trace: ").append(recorder.getRecords()).append(" frames, ")
+               .append(recorder.getKeyframes()).append(" keyframes, ").append(recorder.getTraceBytes())
+               .append(" bytes to ").append(recorder.getFile()).append(separator);
+        }
+        out.append(prefix).append("queue: depth ").append(mMetrics.getQueueDepth())
+           .append(", max ").append(mMetrics.getMaxQueueDepth()).append(", ")
+           .append(getDroppedCommands()).append(" dropped, ")
+           .append(getCoalescedCommands()).append(" coalesced").append(separator);
+        out.append(prefix).append("enqueue->render: ");
+        mMetrics.getEnqueueToRender().dump(out);
+        out.append(separator).append(prefix).append("render->wire: ");
+        mMetrics.getRenderToWire().dump(out);
+        out.append(separator).append(prefix).append("input->wire: ");
+        mMetrics.getInputToWire().dump(out);
+    }
+
+    /**
+     * Send the changed parts of the frame, see FrameFlusher
+     * @return the number of bytes saved compared to a full frame write
+     */
+    private int flushDirtyInner(FrameBuffer frame) throws IOException {
+        if (!mEnabled) {
+            return 0;
+        }
+
+        mLastSaved = mFrameFlusher.flush(frame, mBus);
+        mTotalSaved += mLastSaved;
+        return mLastSaved;
+    }
+
+    private int mTestWord = 0;
+    public void testLCDInner() {
+        if (!mEnabled) {
+            return;
+        }
+
+        mFrameBuffer.fill(mTestWord % 2 == 0 ? (byte) 0x00 : (byte) 0xFF);
+        invalidateInner();
+    }
+
+    /**
+     * Public interfaces
+     */
+    public void open() {
+        try {
+            close();
+            mBus.open();
+            mEnabled = true;
+            int width  = mController.getWidth();
+            int height = mController.getHeight();
+            mFrameBuffer = new FrameBuffer(width, height);
+            mTextCache = new TextBlockCache();
+            mMarquees.clear();
+            mTripleBuffer = new TripleBuffer(width, height);
+            mCommands = new CommandBatch(COMMAND_BYTES);
+            mFrameFlusher = new FrameFlusher(mController);
+            mLastSaved = 0;
+            mInputMark.set(0);
+            mRenderedInput = 0;
+            mPublishedInput.set(0);
+            mTotalSaved = 0;
+            mMetrics.reset(SystemClock.elapsedRealtimeNanos());
+            mScheduler = new FrameScheduler(mScheduler.getMaxFps());
+            mDrawingCache = null;
+            mDrawingCanvas = null;
+            mSurfacePixels = null;
+            mPixelPacker = new PixelPacker();
+            // A Process priority, above the UI thread like the display threads of the system
+            mDriverThread = new HandlerThread(mController.getName() + "_DriverThread", Process.THREAD_PRIORITY_URGENT_DISPLAY);
+            mDriverThread.start();
+            mDriverHandler = new Handler(mDriverThread.getLooper()) {
+                @Override
+                public void handleMessage(Message msg) {
+                    handleDriverMessage(msg);
+                }
+            };
+            mDrainPosted.set(false);
+            DrawCommandQueue queue = new DrawCommandQueue(QUEUE_CAPACITY);
+            queue.setPolicy(mQueuePolicy);
+            mCommandQueue = queue;
+            mRenderPosted.set(false);
+            mAnimationClock.stop();
+            if (mWidgets != null) {
+                // Drawn again on the new frame buffer
+                mWidgets.invalidate();
+                if (mWidgets.isAnimating()) {
+                    postAnimate();
+                }
+            }
+            mSetupPending.set(true);
+            mArbiter.register(mTransferClient, mPriority);
+            mArbiter.requestTransfer(mTransferClient);
+            setMetricsLogInterval(mMetricsInterval);
+        } catch (IOException exp) {
+            mEnabled = false;
+        }
+    }
+
+    /**
+     * Stop the driver, draw calls made from now on are dropped until open()
+     */
+    public void close() {
+        DrawCommandQueue queue = mCommandQueue;
+        if (queue != null) {
+            mCommandQueue = null;
+            queue.close();
+        }
+        if (mDriverThread != null) {
+            // The handler stays for the messages the thread is still running,
+            // the looper drops what is sent to it after quitting
+            mDriverThread.quitSafely();
+            mDriverThread = null;
+        }
+        // Waits for a transfer under way, nothing touches the bus after it
+        mArbiter.unregister(mTransferClient);
+
+        FrameTraceRecorder recorder = mTraceRecorder;
+        if (recorder != null) {
+            recorder.flush();
+        }
+
+        try {
+            mEnabled = false;
+            mBus.close();
+        } catch (IOException exp) {
+            mEnabled = false;
+        }
+    }
+
+    public PanelController getController() {
+        return mController;
+    }
+
+    public int getWidth() {
+        return mController.getWidth();
+    }
+
+    public int getHeight() {
+        return mController.getHeight();
+    }
+
+    /**
+     * Share of the bus this panel gets while other panels on the same SPI
+     * controller have frames to send too
+     * @param priority BusArbiter.PRIORITY_LOW, PRIORITY_NORMAL, PRIORITY_HIGH or any positive weight
+     */
+    public void setBusPriority(int priority) {
+        mPriority = priority;
+        mArbiter.setPriority(mTransferClient, priority);
+    }
+
+    public int getBusPriority() {
+        return mPriority;
+    }
+
+    /**
+     * @return turns this panel got on the bus since it was opened
+     */
+    public long getBusTransfers() {
+        return mArbiter.getTransfers(mTransferClient);
+    }
+
+    public void clearScreen() {
+        enqueue(DrawCommandQueue.TYPE_CLEAR, 0, 0, 0, 0, null);
+    }
+
+    public void drawText(int x, int y, CharSequence text) {
+        drawText(x, y, text, TextBlockCache.ALIGN_LEFT);
+    }
+
+    /**
+     * Draw text with its baseline at y, a string drawn before with the same
+     * alignment is copied from the text cache instead of being laid out again
+     * @param align TextBlockCache.ALIGN_LEFT, ALIGN_CENTER or ALIGN_RIGHT, the way x anchors the text
+     */
+    public void drawText(int x, int y, CharSequence text, int align) {
+        enqueue(DrawCommandQueue.TYPE_DRAW_TEXT, x, y, 0, align, text);
+    }
+
+    /**
+     * Scroll text through a window of the panel at Marquee.DEFAULT_SPEED
+     */
+    public void scrollText(int x, int y, int width, CharSequence text) {
+        scrollText(x, y, width, text, Marquee.DEFAULT_SPEED);
+    }
+
+    /**
+     * Scroll text too long for the panel through a window, from right to left
+     * and around again. Text fitting in the window is drawn still. Each step
+     * only redraws the window, so only the banks under it go to the panel.
+     * A marquee replaces the one running with the same baseline.
+     * @param y     baseline of the text, like drawText
+     * @param speed pixels per second
+     */
+    public void scrollText(int x, int y, int width, CharSequence text, int speed) {
+        enqueue(DrawCommandQueue.TYPE_SCROLL_TEXT, x, y, width, speed, text);
+    }
+
+    /**
+     * Stop all the marquees, leaving their text as it is on the panel
+     */
+    public void stopScrollText() {
+        enqueue(DrawCommandQueue.TYPE_STOP_SCROLL, 0, 0, 0, 0, null);
+    }
+
+    /**
+     * Blink the whole panel every second, to check the wiring
+     */
+    public void testLCD() {
+        enqueue(DrawCommandQueue.TYPE_TEST_LCD, 0, 0, 0, 0, null);
+    }
+
+    /**
+     * Replace the frame with a bitmap, thresholded or dithered according to
+     * the dither mode. The bitmap is drawn at the top-left corner and clipped
+     * to the panel.
+     */
+    public void drawBitmap(Bitmap bitmap) {
+        enqueue(DrawCommandQueue.TYPE_DRAW_BITMAP, 0, 0, 0, 0, bitmap);
+    }
+
+    /**
+     * Show a widget tree, replacing the previous one. From then on changing a
+     * widget has the driver redraw it, and only it, on the next render pass.
+     * Draw calls draw over the widgets until these change again.
+     * @param widgets root of the tree, null to remove the tree and clear its rectangle
+     */
+    public void setWidgets(WidgetGroup widgets) {
+        enqueue(DrawCommandQueue.TYPE_SET_WIDGETS, 0, 0, 0, 0, widgets);
+    }
+
+    /**
+     * What a draw call does when the command queue is full, see DrawCommandQueue
+     * @param policy DrawCommandQueue.POLICY_BLOCK, POLICY_DROP_OLDEST or POLICY_COALESCE, the default
+     */
+    public void setQueuePolicy(int policy) {
+        mQueuePolicy = policy;
+        DrawCommandQueue queue = mCommandQueue;
+        if (queue != null) {
+            queue.setPolicy(policy);
+        }
+    }
+
+    public int getQueuePolicy() {
+        return mQueuePolicy;
+    }
+
+    /**
+     * @return draw calls dropped from the full command queue, or rejected by it
+     *         while it was closing, since open(), 0 once closed
+     */
+    public long getDroppedCommands() {
+        DrawCommandQueue queue = mCommandQueue;
+        return queue != null ? queue.getDroppedCommands() + queue.getRejectedCommands() : 0;
+    }
+
+    /**
+     * @return draw calls merged into one already queued
+     */
+    public long getCoalescedCommands() {
+        DrawCommandQueue queue = mCommandQueue;
+        return queue != null ? queue.getCoalescedCommands() : 0;
+    }
+
+    /**
+     * @param mode one of PixelPacker.MODE_THRESHOLD, MODE_BAYER_2X2, MODE_BAYER_4X4 or MODE_BAYER_8X8
+     */
+    public void setDitherMode(int mode) {
+        mDitherMode = mode;
+    }
+
+    /**
+     * Format of the surface drawBitmap() draws on, from the next call.
+     * FORMAT_ALPHA_8 by default, the bitmaps being drawn through a color
+     * filter turning their luma into alpha, so the panel shows the same as
+     * with FORMAT_RGB_565 for half the bytes read back a frame, a quarter of
+     * what reading an ARGB int[] took.
+     * @param format PixelPacker.FORMAT_RGB_565 or FORMAT_ALPHA_8
+     */
+    public void setSurfaceFormat(int format) {
+        if (format != PixelPacker.FORMAT_RGB_565 && format != PixelPacker.FORMAT_ALPHA_8) {
+            throw new IllegalArgumentException("Unsupported surface format " + format);
+        }
+        mSurfaceFormat = format;
+    }
+
+    public int getSurfaceFormat() {
+        return mSurfaceFormat;
+    }
+
+    /**
+     * Record the frames sent to the panel from now on, and the bytes each one
+     * took on the wire, see FrameTraceRecorder. The recorder is written on the
+     * bus thread, flushed by close(). Replacing it leaves the previous one
+     * open, for its owner to close.
+     * @param recorder null to stop recording
+     */
+    public void setTraceRecorder(FrameTraceRecorder recorder) {
+        mWireTap.setCapturing(recorder != null);
+        mTraceRecorder = recorder;
+    }
+
+    public FrameTraceRecorder getTraceRecorder() {
+        return mTraceRecorder;
+    }
+
+    /**
+     * Time the next widget change to the panel, for input-to-display
+     * latency. Called before changing the widgets for an input event, and
+     * only when the change does invalidate some, the first frame sent with it
+     * then records the time since the event in DriverMetrics.getInputToWire().
+     * A mark whose render pass draws nothing is dropped.
+     * @param eventNanos time of the input event, in SystemClock.elapsedRealtimeNanos()
+     */
+    public void traceInput(long eventNanos) {
+        mInputMark.compareAndSet(0, eventNanos);
+    }
+
+    /**
+     * Rate the animated widgets are stepped at, from the next time they start
+     * animating, AnimationClock.DEFAULT_FPS by default. The frames they draw
+     * still go through the frame rate limit, see setMaxFrameRate().
+     */
+    public void setAnimationFrameRate(int fps) {
+        mAnimationClock.setFps(fps);
+    }
+
+    public int getAnimationFrameRate() {
+        return mAnimationClock.getFps();
+    }
+
+    /**
+     * @return frames the animations were stepped for since the driver was created
+     */
+    public long getAnimationFrames() {
+        return mAnimationClock.getFrames();
+    }
+
+    /**
+     * @return animation steps skipped because the driver thread was busy
+     */
+    public long getSkippedAnimationFrames() {
+        return mAnimationClock.getSkippedFrames();
+    }
+
+    /**
+     * Limit the refresh rate, draw calls within the same tick are merged into one flush
+     */
+    public void setMaxFrameRate(int fps) {
+        mScheduler.setMaxFps(fps);
+    }
+
+    public long getFlushedFrames() {
+        return mScheduler.getFlushedFrames();
+    }
+
+    /**
+     * @return frames superseded by a later draw call before being flushed, or
+     *         by a later flush while the bus was still busy sending the previous one
+     */
+    public long getDroppedFrames() {
+        TripleBuffer tripleBuffer = mTripleBuffer;
+        return mScheduler.getDroppedFrames() + (tripleBuffer != null ? tripleBuffer.getSupersededFrames() : 0);
+    }
+
+    /**
+     * @return text draws served from the text cache
+     */
+    public long getTextCacheHits() {
+        TextBlockCache textCache = mTextCache;
+        return textCache != null ? textCache.getHits() : 0;
+    }
+
+    /**
+     * @return text draws which had to lay the text out
+     */
+    public long getTextCacheMisses() {
+        TextBlockCache textCache = mTextCache;
+        return textCache != null ? textCache.getMisses() : 0;
+    }
+
+    /**
+     * @return text blocks dropped from the text cache to stay within its size
+     */
+    public long getTextCacheEvictions() {
+        TextBlockCache textCache = mTextCache;
+        return textCache != null ? textCache.getEvictions() : 0;
+    }
+
+    public DriverMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * @return bytes written to the panel since the driver was opened, commands and data
+     */
+    public long getSpiBytesSent() {
+        return mBus.getWrittenBytes();
+    }
+
+    /**
+     * Print the metrics, for Activity.dump() so they show up in
+     * "adb shell dumpsys activity <activity>"
+     */
+    public void dump(String prefix, PrintWriter writer) {
+        StringBuilder out = new StringBuilder();
+        appendMetrics(out, prefix, "\n");
+        writer.println(out);
+    }
+
+    /**
+     * Log the metrics every intervalMillis on one line, 0 to stop
+     */
+    public void setMetricsLogInterval(long intervalMillis) {
+        mMetricsInterval = intervalMillis;
+        Handler handler = mDriverHandler;
+        if (handler != null) {
+            handler.removeMessages(MSG_LOG_METRICS);
+            if (intervalMillis > 0) {
+                handler.sendEmptyMessageDelayed(MSG_LOG_METRICS, intervalMillis);
+            }
+        }
+    }
+
+    /**
+     * @return GPIO writes which changed a level and went to the peripherals
+     */
+    public long getGpioWritesIssued() {
+        return mBus.getIssuedWrites();
+    }
+
+    /**
+     * @return GPIO writes skipped since the line already had that level
+     */
+    public long getGpioWritesElided() {
+        return mBus.getElidedWrites();
+    }
+
+    /**
+     * @return bytes saved on the bus by the last flush, compared to a full frame write
+     */
+    public int getLastSavedBytes() {
+        return mLastSaved;
+    }
+
+    /**
+     * @return bytes saved on the bus by all flushes since the driver was opened
+     */
+    public long getTotalSavedBytes() {
+        return mTotalSaved;
+    }
+}
@@ -0,0 +1,38 @@
+package com.cocoonshu.example.pilauncher;
+
+/**
+ * PCD8544, the controller of the Nokia 5110 panel, 84x48 in 6 banks.
+ * @Author Cocoonshu
+ * @Date 2017-05-20
+ */
+public class Pcd8544Controller extends PanelController {
+    public static final int  PIXEL_WIDTH  = 84;
+    public static final int  PIXEL_HEIGHT = 48;
+    public static final byte CMD_SET_Y    = 0x40;
+    public static final byte CMD_SET_X    = (byte) 0x80;
+
+    public Pcd8544Controller() {
+        super("PCD8544", PIXEL_WIDTH, PIXEL_HEIGHT);
+    }
+
+    @Override
+    public void writeInit(CommandBatch batch) {
+        batch.command((byte) 0x21)  // Function set, extended instructions
+             .command((byte) 0xC8)  // Vop
+             .command((byte) 0x06)  // Temperature coefficient
+             .command((byte) 0x13)  // Bias
+             .command((byte) 0x20)  // Function set, basic instructions, horizontal addressing
+             .command((byte) 0x0C); // Display mode normal
+    }
+
+    @Override
+    public void writeAddress(CommandBatch batch, int bank, int column) {
+        batch.command((byte) (CMD_SET_Y | bank))
+             .command((byte) (CMD_SET_X | column));
+    }
+
+    @Override
+    public int getAddressBytes() {
+        return 2;
+    }
+}
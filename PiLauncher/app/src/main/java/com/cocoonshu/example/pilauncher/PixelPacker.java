@@ -0,0 +1,311 @@
+package com.cocoonshu.example.pilauncher;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Table driven ARGB to 1-bpp packing kernel.
+ * Pixels are reduced with per-channel luminance tables and compared against
+ * an 8x8 threshold table, which is flat for plain thresholding and holds a
+ * Bayer matrix for the ordered dither modes. Every 8x8 block of a bank is
+ * gathered as 8 row bytes and transposed into 8 column bytes in one go, so
+ * the result is written straight in PCD8544 bank/column order.
+ * Pixels copied out of a Bitmap into a direct buffer are packed by the same
+ * kernel in native-lib when the library is loaded, the Java loop over the
+ * buffer giving the same bytes otherwise.
+ * @Author Cocoonshu
+ * @Date 2017-05-06
+ */
+public class PixelPacker {
+    public static final int MODE_THRESHOLD = 0;
+    public static final int MODE_BAYER_2X2 = 1;
+    public static final int MODE_BAYER_4X4 = 2;
+    public static final int MODE_BAYER_8X8 = 3;
+
+    /**
+     * Bitmap.Config.ARGB_8888 as copyPixelsToBuffer() writes it, bytes R, G, B, A
+     */
+    public static final int FORMAT_ARGB_8888 = 0;
+
+    /**
+     * Bitmap.Config.RGB_565, 16 bits a pixel in the order of the buffer
+     */
+    public static final int FORMAT_RGB_565   = 1;
+
+    /**
+     * Bitmap.Config.ALPHA_8, the alpha taken as the gray level of the pixel
+     */
+    public static final int FORMAT_ALPHA_8   = 2;
+
+    private static final int   BitPerBank     = 8;
+    private static final int   GARY_THRESHOLD = 0x80;
+    private static final int   LUMA_MAX       = 255 + (255 << 2) + 255;
+    private static final int[] LUMA_R         = new int[256];
+    private static final int[] LUMA_G         = new int[256];
+    private static final int[] LUMA_B         = new int[256];
+    private static final int[] BAYER_8X8      = {
+             0, 32,  8, 40,  2, 34, 10, 42,
+            48, 16, 56, 24, 50, 18, 58, 26,
+            12, 44,  4, 36, 14, 46,  6, 38,
+            60, 28, 52, 20, 62, 30, 54, 22,
+             3, 35, 11, 43,  1, 33,  9, 41,
+            51, 19, 59, 27, 49, 17, 57, 25,
+            15, 47,  7, 39, 13, 45,  5, 37,
+            63, 31, 55, 23, 61, 29, 53, 21
+    };
+
+    static {
+        // Same weights as the former RGB2Gary, (r + 4g + b) >> 2, kept unshifted
+        for (int i = 0; i < 256; i++) {
+            LUMA_R[i] = i;
+            LUMA_G[i] = i << 2;
+            LUMA_B[i] = i;
+        }
+    }
+
+    private static final boolean sNativeLoaded = loadNative();
+
+    private final int[] mThresholds    = new int[BitPerBank * BitPerBank];
+    private int         mMode          = -1;
+    private boolean     mNativeEnabled = sNativeLoaded;
+    private ByteBuffer  mFrameBytes    = null;
+
+    public PixelPacker() {
+        setMode(MODE_THRESHOLD);
+    }
+
+    /**
+     * @return true if native-lib could be loaded, on the device or on a host JVM
+     * given its build in java.library.path
+     */
+    public static boolean isNativeAvailable() {
+        return sNativeLoaded;
+    }
+
+    /**
+     * @param enabled false to pack the buffers in Java even with native-lib loaded
+     */
+    public void setNativeEnabled(boolean enabled) {
+        mNativeEnabled = enabled && sNativeLoaded;
+    }
+
+    public boolean isNativeEnabled() {
+        return mNativeEnabled;
+    }
+
+    public int getMode() {
+        return mMode;
+    }
+
+    public void setMode(int mode) {
+        if (mode == mMode) {
+            return;
+        }
+
+        // A pixel is set when its luma is strictly above the threshold of its cell
+        int size = 1;
+        switch (mode) {
+            case MODE_BAYER_2X2: size = 2; break;
+            case MODE_BAYER_4X4: size = 4; break;
+            case MODE_BAYER_8X8: size = 8; break;
+            default: mode = MODE_THRESHOLD; break;
+        }
+        for (int row = 0; row < BitPerBank; row++) {
+            for (int column = 0; column < BitPerBank; column++) {
+                if (mode == MODE_THRESHOLD) {
+                    mThresholds[row * BitPerBank + column] = ((GARY_THRESHOLD + 1) << 2) - 1;
+                } else {
+                    // The top-left size x size corner of the 8x8 Bayer matrix is
+                    // itself a Bayer matrix once divided by (64 / size^2)
+                    int scale = 64 / (size * size);
+                    int rank  = BAYER_8X8[(row % size) * BitPerBank + (column % size)] / scale;
+                    mThresholds[row * BitPerBank + column] = (2 * rank + 1) * LUMA_MAX / (2 * size * size);
+                }
+            }
+        }
+        mMode = mode;
+    }
+
+    /**
+     * Pack ARGB pixels into a bank layout frame.
+     * @param pixels ARGB pixels, row after row, stride being the frame width
+     */
+    public void pack(int[] pixels, FrameBuffer frame) {
+        pack(pixels, frame.getWidth(), frame.getHeight(), frame.getBytes());
+    }
+
+    public void pack(int[] pixels, int width, int height, byte[] out) {
+        int[] thresholds = mThresholds;
+        int   banks      = height / BitPerBank;
+        for (int bank = 0; bank < banks; bank++) {
+            int rowBase = bank * BitPerBank * width;
+            int outBase = bank * width;
+            for (int x0 = 0; x0 < width; x0 += BitPerBank) {
+                int  columns = Math.min(BitPerBank, width - x0);
+                long block   = 0;
+                for (int row = 0; row < BitPerBank; row++) {
+                    int pixel     = rowBase + row * width + x0;
+                    int threshold = row * BitPerBank;
+                    int  bits     = 0;
+                    for (int column = 0; column < columns; column++) {
+                        int color = pixels[pixel + column];
+                        int luma  = LUMA_R[(color >> 16) & 0xFF] + LUMA_G[(color >> 8) & 0xFF] + LUMA_B[color & 0xFF];
+                        // Branch free, the sign bit of threshold - luma is set when luma is above it
+                        bits |= ((thresholds[threshold + column] - luma) >>> 31) << column;
+                    }
+                    block |= (long) bits << (row * BitPerBank);
+                }
+                block = transpose8x8(block);
+                for (int column = 0; column < columns; column++) {
+                    out[outBase + x0 + column] = (byte) (block >>> (column * BitPerBank));
+                }
+            }
+        }
+    }
+
+    /**
+     * Pack the pixels of a buffer into a bank layout frame.
+     * @param pixels FORMAT_* pixels from index 0, row after row, stride being the frame width
+     */
+    public void pack(ByteBuffer pixels, int format, FrameBuffer frame) {
+        int    width  = frame.getWidth();
+        int    height = frame.getHeight();
+        byte[] bytes  = frame.getBytes();
+        checkBuffers(pixels, format, width, height, bytes.length);
+        if (!mNativeEnabled || !pixels.isDirect()) {
+            packJava(pixels, format, width, height, bytes, 0);
+            return;
+        }
+
+        // Packed natively aside then copied, the frame bytes aren't direct
+        if (mFrameBytes == null || mFrameBytes.capacity() < bytes.length) {
+            mFrameBytes = ByteBuffer.allocateDirect(bytes.length);
+        }
+        if (!nativePack(pixels, format, pixels.order() != ByteOrder.nativeOrder(), width, height, mThresholds, mFrameBytes)) {
+            packJava(pixels, format, width, height, bytes, 0);
+            return;
+        }
+        mFrameBytes.clear();
+        mFrameBytes.get(bytes);
+    }
+
+    /**
+     * Pack the pixels of a buffer into bank layout bytes, in native-lib when
+     * both buffers are direct. The positions of the buffers are left as they are.
+     * @param pixels FORMAT_* pixels from index 0, row after row, stride being width
+     * @param out    width bytes a bank from index 0
+     */
+    public void pack(ByteBuffer pixels, int format, int width, int height, ByteBuffer out) {
+        checkBuffers(pixels, format, width, height, out.capacity());
+        if (mNativeEnabled && pixels.isDirect() && out.isDirect()
+                && nativePack(pixels, format, pixels.order() != ByteOrder.nativeOrder(), width, height, mThresholds, out)) {
+            return;
+        }
+
+        if (out.hasArray()) {
+            packJava(pixels, format, width, height, out.array(), out.arrayOffset());
+            return;
+        }
+        byte[] bytes = new byte[width * (height / BitPerBank)];
+        packJava(pixels, format, width, height, bytes, 0);
+        for (int i = 0; i < bytes.length; i++) {
+            out.put(i, bytes[i]);
+        }
+    }
+
+    /**
+     * @return the size of a pixel of a FORMAT_*
+     */
+    public static int getBytesPerPixel(int format) {
+        switch (format) {
+            case FORMAT_ARGB_8888: return 4;
+            case FORMAT_RGB_565:   return 2;
+            case FORMAT_ALPHA_8:   return 1;
+            default: throw new IllegalArgumentException("Unknown pixel format " + format);
+        }
+    }
+
+    private static void checkBuffers(ByteBuffer pixels, int format, int width, int height, int outBytes) {
+        int bytesPerPixel = getBytesPerPixel(format);
+        if (width <= 0 || height <= 0 || height % BitPerBank != 0
+                || pixels.capacity() < width * height * bytesPerPixel
+                || outBytes < width * (height / BitPerBank)) {
+            throw new IllegalArgumentException("Buffers too small for " + width + "x" + height);
+        }
+    }
+
+    /**
+     * The same loop as pack(int[]), reading the pixels out of the buffer
+     */
+    private void packJava(ByteBuffer pixels, int format, int width, int height, byte[] out, int offset) {
+        int[] thresholds = mThresholds;
+        int   banks      = height / BitPerBank;
+        for (int bank = 0; bank < banks; bank++) {
+            int rowBase = bank * BitPerBank * width;
+            int outBase = offset + bank * width;
+            for (int x0 = 0; x0 < width; x0 += BitPerBank) {
+                int  columns = Math.min(BitPerBank, width - x0);
+                long block   = 0;
+                for (int row = 0; row < BitPerBank; row++) {
+                    int pixel     = rowBase + row * width + x0;
+                    int threshold = row * BitPerBank;
+                    int  bits     = 0;
+                    for (int column = 0; column < columns; column++) {
+                        int luma = lumaAt(pixels, format, pixel + column);
+                        bits |= ((thresholds[threshold + column] - luma) >>> 31) << column;
+                    }
+                    block |= (long) bits << (row * BitPerBank);
+                }
+                block = transpose8x8(block);
+                for (int column = 0; column < columns; column++) {
+                    out[outBase + x0 + column] = (byte) (block >>> (column * BitPerBank));
+                }
+            }
+        }
+    }
+
+    /**
+     * 565 channels are widened to 8 bits by repeating their high bits, as the
+     * native kernel does, so both give the luma an ARGB pixel would
+     */
+    private static int lumaAt(ByteBuffer pixels, int format, int index) {
+        if (format == FORMAT_ALPHA_8) {
+            int alpha = pixels.get(index) & 0xFF;
+            return LUMA_R[alpha] + LUMA_G[alpha] + LUMA_B[alpha];
+        } else if (format == FORMAT_RGB_565) {
+            int color = pixels.getShort(index << 1) & 0xFFFF;
+            int red   = (color >> 11) & 0x1F;
+            int green = (color >> 5) & 0x3F;
+            int blue  = color & 0x1F;
+            return LUMA_R[(red << 3) | (red >> 2)] + LUMA_G[(green << 2) | (green >> 4)] + LUMA_B[(blue << 3) | (blue >> 2)];
+        }
+        int offset = index << 2;
+        return LUMA_R[pixels.get(offset) & 0xFF] + LUMA_G[pixels.get(offset + 1) & 0xFF] + LUMA_B[pixels.get(offset + 2) & 0xFF];
+    }
+
+    /**
+     * Transpose an 8x8 bit matrix, bit 8 * i + j moving to bit 8 * j + i
+     */
+    public static long transpose8x8(long x) {
+        long t;
+        t = (x ^ (x >>> 7))  & 0x00AA00AA00AA00AAL; x = x ^ t ^ (t << 7);
+        t = (x ^ (x >>> 14)) & 0x0000CCCC0000CCCCL; x = x ^ t ^ (t << 14);
+        t = (x ^ (x >>> 28)) & 0x00000000F0F0F0F0L; x = x ^ t ^ (t << 28);
+        return x;
+    }
+
+    private static boolean loadNative() {
+        try {
+            System.loadLibrary("native-lib");
+            return true;
+        } catch (UnsatisfiedLinkError | SecurityException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return false if a buffer has no address, nothing being written then
+     */
+    private static native boolean nativePack(ByteBuffer pixels, int format, boolean swap,
+                                             int width, int height, int[] thresholds, ByteBuffer out);
+}
@@ -0,0 +1,143 @@
+package com.cocoonshu.example.pilauncher;
+
+import java.io.IOException;
+
+/**
+ * DisplayBus decorator eliding redundant GPIO writes.
+ * Each of the DC, CS, RST and BL lines goes through a ShadowedPin, so only
+ * level changes reach the wrapped bus, where every GPIO write is a call into
+ * the peripheral manager and may cost more than the SPI payload of a small
+ * update.
+ * @Author Cocoonshu
+ * @Date 2017-05-16
+ */
+public class ShadowedBus implements DisplayBus {
+    public static final int PIN_DC  = 0;
+    public static final int PIN_CS  = 1;
+    public static final int PIN_RST = 2;
+    public static final int PIN_BL  = 3;
+
+    private final DisplayBus    mBus;
+    private final ShadowedPin[] mPins;
+    private volatile long       mWrittenBytes = 0;
+    private volatile long       mTransfers    = 0;
+
+    public ShadowedBus(final DisplayBus bus) {
+        mBus  = bus;
+        mPins = new ShadowedPin[] {
+                new ShadowedPin(new ShadowedPin.Output() {
+                    @Override
+                    public void setValue(boolean value) throws IOException {
+                        bus.setDataMode(value);
+                    }
+                }),
+                new ShadowedPin(new ShadowedPin.Output() {
+                    @Override
+                    public void setValue(boolean value) throws IOException {
+                        bus.setSelected(value);
+                    }
+                }),
+                new ShadowedPin(new ShadowedPin.Output() {
+                    @Override
+                    public void setValue(boolean value) throws IOException {
+                        bus.setReset(value);
+                    }
+                }),
+                new ShadowedPin(new ShadowedPin.Output() {
+                    @Override
+                    public void setValue(boolean value) throws IOException {
+                        bus.setBacklight(value);
+                    }
+                })
+        };
+    }
+
+    public DisplayBus getWrappedBus() {
+        return mBus;
+    }
+
+    public ShadowedPin getPin(int pin) {
+        return mPins[pin];
+    }
+
+    public long getIssuedWrites() {
+        long issued = 0;
+        for (ShadowedPin pin : mPins) {
+            issued += pin.getIssuedWrites();
+        }
+        return issued;
+    }
+
+    public long getElidedWrites() {
+        long elided = 0;
+        for (ShadowedPin pin : mPins) {
+            elided += pin.getElidedWrites();
+        }
+        return elided;
+    }
+
+    /**
+     * @return bytes written to the SPI device, commands and data
+     */
+    public long getWrittenBytes() {
+        return mWrittenBytes;
+    }
+
+    /**
+     * @return SPI transfers, each write being one
+     */
+    public long getTransfers() {
+        return mTransfers;
+    }
+
+    private void invalidatePins() {
+        for (ShadowedPin pin : mPins) {
+            pin.invalidate();
+        }
+    }
+
+    @Override
+    public void open() throws IOException {
+        invalidatePins();
+        mBus.open();
+    }
+
+    @Override
+    public void close() throws IOException {
+        invalidatePins();
+        mBus.close();
+    }
+
+    @Override
+    public void setDataMode(boolean data) throws IOException {
+        mPins[PIN_DC].setValue(data);
+    }
+
+    @Override
+    public void setSelected(boolean selected) throws IOException {
+        mPins[PIN_CS].setValue(selected);
+    }
+
+    @Override
+    public void setReset(boolean asserted) throws IOException {
+        mPins[PIN_RST].setValue(asserted);
+    }
+
+    @Override
+    public void setBacklight(boolean on) throws IOException {
+        mPins[PIN_BL].setValue(on);
+    }
+
+    @Override
+    public boolean isBacklightOn() throws IOException {
+        ShadowedPin backlight = mPins[PIN_BL];
+        return backlight.isKnown() ? backlight.getValue() : mBus.isBacklightOn();
+    }
+
+    @Override
+    public void write(byte[] buffer, int length) throws IOException {
+        mBus.write(buffer, length);
+        mWrittenBytes += length;
+        mTransfers++;
+    }
+}
@@ -0,0 +1,67 @@
+package com.cocoonshu.example.pilauncher;
+
+import java.io.IOException;
+
+/**
+ * Output pin remembering the last level written to it.
+ * Writes of the level the pin already has are elided, the level becomes
+ * unknown again when a write fails or the pin is invalidated, so the next
+ * write always goes through.
+ * @Author Cocoonshu
+ * @Date 2017-05-16
+ */
+public class ShadowedPin {
+
+    /**
+     * The real pin behind the shadow
+     */
+    public interface Output {
+        void setValue(boolean value) throws IOException;
+    }
+
+    private final Output  mOutput;
+    private boolean       mKnown  = false;
+    private boolean       mLevel  = false;
+    private volatile long mIssued = 0;
+    private volatile long mElided = 0;
+
+    public ShadowedPin(Output output) {
+        mOutput = output;
+    }
+
+    public void setValue(boolean value) throws IOException {
+        if (mKnown && mLevel == value) {
+            mElided++;
+            return;
+        }
+
+        mKnown = false;
+        mIssued++;
+        mOutput.setValue(value);
+        mLevel = value;
+        mKnown = true;
+    }
+
+    /**
+     * @return whether the last written level is known
+     */
+    public boolean isKnown() {
+        return mKnown;
+    }
+
+    public boolean getValue() {
+        return mLevel;
+    }
+
+    public void invalidate() {
+        mKnown = false;
+    }
+
+    public long getIssuedWrites() {
+        return mIssued;
+    }
+
+    public long getElidedWrites() {
+        return mElided;
+    }
+}
@@ -0,0 +1,251 @@
+package com.cocoonshu.example.pilauncher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * In-memory DisplayBus with a timing model, to run and profile display drivers
+ * without a panel attached. Every call is recorded as a transaction on a
+ * simulated clock: SPI writes cost a fixed overhead plus their bits at the
+ * configured clock, GPIO writes a fixed latency each. A frame is a chip select
+ * cycle carrying display data, which gives the achievable frames/sec and the
+ * bus utilisation at a given refresh rate.
+ * @Author Cocoonshu
+ * @Date 2017-05-10
+ */
+public class SimulatedBus implements DisplayBus {
+    public static final int  TYPE_DC           = 0;
+    public static final int  TYPE_CS           = 1;
+    public static final int  TYPE_RST          = 2;
+    public static final int  TYPE_BL           = 3;
+    public static final int  TYPE_COMMAND      = 4;
+    public static final int  TYPE_DATA         = 5;
+    public static final int  DEFAULT_CLOCK_HZ  = 4000000;
+    public static final long DEFAULT_TOGGLE_NS = 20000;
+    public static final long DEFAULT_WRITE_NS  = 20000;
+
+    private static final int  BitPerWord    = 8;
+    private static final long NANOS_PER_SEC = 1000000000L;
+
+    /**
+     * One recorded bus call
+     */
+    public static final class Transaction {
+        public final int    type;
+        public final long   startNs;
+        public final long   durationNs;
+        public final int    value;
+        public final byte[] bytes;
+
+        Transaction(int type, long startNs, long durationNs, int value, byte[] bytes) {
+            this.type       = type;
+            this.startNs    = startNs;
+            this.durationNs = durationNs;
+            this.value      = value;
+            this.bytes      = bytes;
+        }
+    }
+
+    private final List<Transaction> mTransactions = new ArrayList<>();
+    private int     mClockHz       = DEFAULT_CLOCK_HZ;
+    private long    mToggleNs      = DEFAULT_TOGGLE_NS;
+    private long    mWriteNs       = DEFAULT_WRITE_NS;
+    private boolean mRecording     = true;
+    private boolean mOpened        = false;
+    private boolean mDataMode      = false;
+    private boolean mSelected      = false;
+    private boolean mBacklight     = false;
+    private long    mNowNs         = 0;
+    private long    mBusyNs        = 0;
+    private long    mToggles       = 0;
+    private long    mWrites        = 0;
+    private long    mCommandBytes  = 0;
+    private long    mDataBytes     = 0;
+    private long    mFrames        = 0;
+    private long    mFrameBusyNs   = 0;
+    private long    mFrameStartNs  = -1;
+    private boolean mFrameHasData  = false;
+
+    public SimulatedBus() {
+    }
+
+    /**
+     * @param clockHz  SPI clock
+     * @param toggleNs latency of a single GPIO write
+     * @param writeNs  fixed overhead of a single SPI transfer
+     */
+    public SimulatedBus(int clockHz, long toggleNs, long writeNs) {
+        mClockHz  = clockHz;
+        mToggleNs = toggleNs;
+        mWriteNs  = writeNs;
+    }
+
+    public void setRecording(boolean recording) {
+        mRecording = recording;
+    }
+
+    public List<Transaction> getTransactions() {
+        return mTransactions;
+    }
+
+    /**
+     * Clear the transactions and the statistics, the line levels are kept
+     */
+    public void reset() {
+        mTransactions.clear();
+        mNowNs        = 0;
+        mBusyNs       = 0;
+        mToggles      = 0;
+        mWrites       = 0;
+        mCommandBytes = 0;
+        mDataBytes    = 0;
+        mFrames       = 0;
+        mFrameBusyNs  = 0;
+        mFrameStartNs = mSelected ? 0 : -1;
+        mFrameHasData = false;
+    }
+
+    /**
+     * Let the simulated clock run with the bus idle
+     */
+    public void idle(long durationNs) {
+        mNowNs += durationNs;
+    }
+
+    private void record(int type, long durationNs, int value, byte[] bytes) {
+        if (mRecording) {
+            mTransactions.add(new Transaction(type, mNowNs, durationNs, value, bytes));
+        }
+        mNowNs  += durationNs;
+        mBusyNs += durationNs;
+    }
+
+    private void toggle(int type, boolean value) {
+        mToggles++;
+        record(type, mToggleNs, value ? 1 : 0, null);
+    }
+
+    @Override
+    public void open() {
+        mOpened = true;
+    }
+
+    @Override
+    public void close() {
+        mOpened = false;
+    }
+
+    public boolean isOpened() {
+        return mOpened;
+    }
+
+    @Override
+    public void setDataMode(boolean data) {
+        mDataMode = data;
+        toggle(TYPE_DC, data);
+    }
+
+    @Override
+    public void setSelected(boolean selected) {
+        long startNs = mNowNs;
+        toggle(TYPE_CS, selected);
+        if (selected && !mSelected) {
+            mFrameStartNs = startNs;
+            mFrameHasData = false;
+        } else if (!selected && mSelected && mFrameStartNs >= 0) {
+            if (mFrameHasData) {
+                mFrames++;
+                mFrameBusyNs += mNowNs - mFrameStartNs;
+            }
+            mFrameStartNs = -1;
+        }
+        mSelected = selected;
+    }
+
+    @Override
+    public void setReset(boolean asserted) {
+        toggle(TYPE_RST, asserted);
+    }
+
+    @Override
+    public void setBacklight(boolean on) {
+        mBacklight = on;
+        toggle(TYPE_BL, on);
+    }
+
+    @Override
+    public boolean isBacklightOn() {
+        return mBacklight;
+    }
+
+    @Override
+    public void write(byte[] buffer, int length) {
+        long durationNs = mWriteNs + (long) length * BitPerWord * NANOS_PER_SEC / mClockHz;
+        mWrites++;
+        if (mDataMode) {
+            mDataBytes += length;
+            mFrameHasData = true;
+        } else {
+            mCommandBytes += length;
+        }
+        record(mDataMode ? TYPE_DATA : TYPE_COMMAND, durationNs, length,
+                mRecording ? Arrays.copyOf(buffer, length) : null);
+    }
+
+    public long getNowNs() {
+        return mNowNs;
+    }
+
+    public long getBusyNs() {
+        return mBusyNs;
+    }
+
+    public long getToggles() {
+        return mToggles;
+    }
+
+    public long getWrites() {
+        return mWrites;
+    }
+
+    public long getCommandBytes() {
+        return mCommandBytes;
+    }
+
+    public long getDataBytes() {
+        return mDataBytes;
+    }
+
+    public long getFrames() {
+        return mFrames;
+    }
+
+    /**
+     * @return average bus time of a frame, from chip select to deselect
+     */
+    public long getAverageFrameNs() {
+        return mFrames > 0 ? mFrameBusyNs / mFrames : 0;
+    }
+
+    /**
+     * @return frames/sec the bus could carry with frames like the ones seen so far
+     */
+    public double getAchievableFps() {
+        return mFrameBusyNs > 0 ? (double) mFrames * NANOS_PER_SEC / mFrameBusyNs : 0;
+    }
+
+    /**
+     * @return share of the bus time frames like the ones seen so far would use at refreshRate
+     */
+    public double getUtilisation(double refreshRate) {
+        return Math.min(1.0, refreshRate * getAverageFrameNs() / NANOS_PER_SEC);
+    }
+
+    /**
+     * @return share of the simulated time the bus has been busy
+     */
+    public double getUtilisation() {
+        return mNowNs > 0 ? (double) mBusyNs / mNowNs : 0;
+    }
+}
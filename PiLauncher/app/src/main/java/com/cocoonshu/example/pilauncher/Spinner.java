@@ -0,0 +1,98 @@
+package com.cocoonshu.example.pilauncher;
+
+/**
+ * Busy indicator, a ring of dots with a bolder head going round, in the
+ * square centered in its rectangle. The head moves a dot per step of
+ * period / DOTS of animation time, the spinner only being redrawn when it
+ * does, so it costs a few banks a step whatever the frame rate.
+ * @Author Cocoonshu
+ * @Date 2017-05-30
+ */
+public class Spinner extends Widget {
+    public static final long DEFAULT_PERIOD = 800;
+
+    private static final int DOTS  = 8;
+    private static final int TRAIL = 3;
+
+    private final int[]      mDotX     = new int[DOTS];
+    private final int[]      mDotY     = new int[DOTS];
+    private volatile long    mPeriod   = DEFAULT_PERIOD;
+    private volatile boolean mSpinning = false;
+    private volatile int     mHead     = 0;
+
+    public Spinner(int x, int y, int width, int height) {
+        super(x, y, width, height);
+        int    size    = Math.min(width, height);
+        double radius  = (size - 2) / 2.0;
+        double centerX = x + (width - 1) / 2.0;
+        double centerY = y + (height - 1) / 2.0;
+        for (int i = 0; i < DOTS; i++) {
+            double angle = 2 * Math.PI * i / DOTS - Math.PI / 2;
+            mDotX[i] = (int) Math.round(centerX + radius * Math.cos(angle));
+            mDotY[i] = (int) Math.round(centerY + radius * Math.sin(angle));
+        }
+    }
+
+    /**
+     * Stopped, the spinner shows its ring of dots only
+     */
+    public void setSpinning(boolean spinning) {
+        if (mSpinning != spinning) {
+            mSpinning = spinning;
+            invalidate();
+            if (spinning) {
+                startAnimation();
+            }
+        }
+    }
+
+    public boolean isSpinning() {
+        return mSpinning;
+    }
+
+    /**
+     * @param period ms of animation time for a round
+     */
+    public void setPeriod(long period) {
+        mPeriod = Math.max(period, DOTS);
+    }
+
+    @Override
+    public boolean isAnimating() {
+        return mSpinning;
+    }
+
+    @Override
+    public boolean animate(long time) {
+        if (!mSpinning) {
+            return false;
+        }
+
+        int head = (int) (time / (mPeriod / DOTS) % DOTS);
+        if (head != mHead) {
+            mHead = head;
+            invalidate();
+        }
+        return true;
+    }
+
+    @Override
+    protected void onDraw(DrawContext context) {
+        FrameBuffer frame = context.frame;
+        for (int i = 0; i < DOTS; i++) {
+            frame.setPixel(mDotX[i], mDotY[i], true);
+        }
+        if (!mSpinning) {
+            return;
+        }
+
+        // The head and the dots behind it in 2x2, kept inside the rectangle
+        int head = mHead;
+        for (int i = 0; i < TRAIL; i++) {
+            int dot = (head - i + DOTS) % DOTS;
+            int x   = Math.max(mX, Math.min(mDotX[dot], mX + mWidth - 2));
+            int y   = Math.max(mY, Math.min(mDotY[dot], mY + mHeight - 2));
+            frame.fillRect(x, y, 2, 2);
+        }
+    }
+}
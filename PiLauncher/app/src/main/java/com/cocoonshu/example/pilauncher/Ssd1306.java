@@ -0,0 +1,31 @@
+package com.cocoonshu.example.pilauncher;
+
+/**
+ * SSD1306 OLED module on SPI, 128x64 unless told otherwise. The panel has no
+ * backlight, the lighting calls do nothing unless a line is given for one.
+ * @Author Cocoonshu
+ * @Date 2017-05-20
+ */
+public class Ssd1306 extends PanelDriver {
+    private static final int SpiSpeed = 8000000;
+
+    /**
+     * @param name SPI device like "SPI0.1", panels on the other chip selects of
+     *             the same controller share its bus
+     * @param bl   backlight line, null for none
+     */
+    public Ssd1306(String name, String dc, String cs, String rst, String bl) {
+        this(new AndroidThingsBus(name, dc, cs, rst, bl, SpiSpeed), BusArbiter.forBus(name), new Ssd1306Controller());
+    }
+
+    public Ssd1306(DisplayBus bus) {
+        this(bus, new BusArbiter("Ssd1306"), new Ssd1306Controller());
+    }
+
+    /**
+     * @param controller Ssd1306Controller of the size of the module
+     */
+    public Ssd1306(DisplayBus bus, BusArbiter arbiter, Ssd1306Controller controller) {
+        super(controller, bus, arbiter);
+    }
+}
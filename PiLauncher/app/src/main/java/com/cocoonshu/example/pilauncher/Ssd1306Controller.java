@@ -0,0 +1,60 @@
+package com.cocoonshu.example.pilauncher;
+
+/**
+ * SSD1306 OLED controller on its 4-wire SPI interface, 128x64 or 128x32.
+ * The panel runs in horizontal addressing mode, addressing sets a column and
+ * page window from the target to the bottom right corner, so the data wraps
+ * into the next page like on the PCD8544.
+ * @Author Cocoonshu
+ * @Date 2017-05-20
+ */
+public class Ssd1306Controller extends PanelController {
+    public static final int  PIXEL_WIDTH          = 128;
+    public static final int  PIXEL_HEIGHT         = 64;
+    public static final byte CMD_SET_COLUMN_RANGE = 0x21;
+    public static final byte CMD_SET_PAGE_RANGE   = 0x22;
+
+    public Ssd1306Controller() {
+        this(PIXEL_WIDTH, PIXEL_HEIGHT);
+    }
+
+    /**
+     * @param height 64 or 32 depending on the module
+     */
+    public Ssd1306Controller(int width, int height) {
+        super("SSD1306", width, height);
+    }
+
+    @Override
+    public void writeInit(CommandBatch batch) {
+        int multiplex = getHeight() - 1;
+        int comPins   = getHeight() == 64 ? 0x12 : 0x02;
+        batch.command((byte) 0xAE)                                  // Display off
+             .command((byte) 0xD5).command((byte) 0x80)             // Clock divide ratio, oscillator frequency
+             .command((byte) 0xA8).command((byte) multiplex)        // Multiplex ratio
+             .command((byte) 0xD3).command((byte) 0x00)             // Display offset
+             .command((byte) 0x40)                                  // Start line 0
+             .command((byte) 0x8D).command((byte) 0x14)             // Charge pump on
+             .command((byte) 0x20).command((byte) 0x00)             // Horizontal addressing
+             .command((byte) 0xA1)                                  // Column 127 mapped to SEG0
+             .command((byte) 0xC8)                                  // COM scan from COM[N-1] to COM0
+             .command((byte) 0xDA).command((byte) comPins)          // COM pins configuration
+             .command((byte) 0x81).command((byte) 0xCF)             // Contrast
+             .command((byte) 0xD9).command((byte) 0xF1)             // Pre-charge period
+             .command((byte) 0xDB).command((byte) 0x40)             // VCOMH deselect level
+             .command((byte) 0xA4)                                  // Display follows RAM
+             .command((byte) 0xA6)                                  // Display mode normal
+             .command((byte) 0xAF);                                 // Display on
+    }
+
+    @Override
+    public void writeAddress(CommandBatch batch, int bank, int column) {
+        batch.command(CMD_SET_COLUMN_RANGE).command((byte) column).command((byte) (getWidth() - 1))
+             .command(CMD_SET_PAGE_RANGE).command((byte) bank).command((byte) (getBanks() - 1));
+    }
+
+    @Override
+    public int getAddressBytes() {
+        return 6;
+    }
+}
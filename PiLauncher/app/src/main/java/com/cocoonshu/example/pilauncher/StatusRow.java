@@ -0,0 +1,38 @@
+package com.cocoonshu.example.pilauncher;
+
+/**
+ * Icon followed by a label, a row of the status screen. The icon is a
+ * square as tall as the row.
+ * @Author Cocoonshu
+ * @Date 2017-05-23
+ */
+public class StatusRow extends WidgetGroup {
+    private static final int ICON_SPACING = 2;
+
+    private final Icon  mIcon;
+    private final Label mLabel;
+
+    public StatusRow(int x, int y, int width, int height) {
+        super(x, y, width, height);
+        mIcon  = new Icon(x, y, height, height);
+        mLabel = new Label(x + height + ICON_SPACING, y, width - height - ICON_SPACING, height);
+        addChild(mIcon);
+        addChild(mLabel);
+    }
+
+    public Icon getIcon() {
+        return mIcon;
+    }
+
+    public Label getLabel() {
+        return mLabel;
+    }
+
+    public void setImage(FrameBuffer image) {
+        mIcon.setImage(image);
+    }
+
+    public void setText(CharSequence text) {
+        mLabel.setText(text);
+    }
+}
@@ -0,0 +1,201 @@
+package com.cocoonshu.example.pilauncher;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of rendered text blocks.
+ * A block is a string laid out once with a GlyphAtlas into its own bank layout
+ * sprite, so drawing the same string again is a blit of its bytes into the
+ * frame, which is a plain copy per bank when the block lands on a bank
+ * boundary. Blocks are keyed by text, text size and alignment and the cache is
+ * bounded by the bytes of the blocks it holds, the least recently drawn ones
+ * being evicted first. Not thread safe, meant for the driver thread.
+ * @Author Cocoonshu
+ * @Date 2017-05-18
+ */
+public class TextBlockCache {
+    public static final int ALIGN_LEFT        = 0;
+    public static final int ALIGN_CENTER      = 1;
+    public static final int ALIGN_RIGHT       = 2;
+    public static final int DEFAULT_MAX_BYTES = 4096;
+
+    private static final int BitPerBank = 8;
+
+    /**
+     * One rendered string, bit n of a byte being row n of its bank
+     */
+    public static final class TextBlock {
+        public final FrameBuffer bitmap;
+        public final int         rows;
+        public final int         top;
+        public final int         offsetX;
+        public final int         advance;
+
+        TextBlock(FrameBuffer bitmap, int rows, int top, int offsetX, int advance) {
+            this.bitmap  = bitmap;
+            this.rows    = rows;
+            this.top     = top;
+            this.offsetX = offsetX;
+            this.advance = advance;
+        }
+    }
+
+    private static final class Key {
+        CharSequence text;
+        float        textSize;
+        int          align;
+        int          hash;
+
+        Key set(CharSequence text, float textSize, int align) {
+            this.text     = text;
+            this.textSize = textSize;
+            this.align    = align;
+            int hash = 0;
+            for (int i = 0; i < text.length(); i++) {
+                hash = 31 * hash + text.charAt(i);
+            }
+            this.hash = 31 * (31 * hash + Float.floatToIntBits(textSize)) + align;
+            return this;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) object;
+            if (hash != other.hash || align != other.align || textSize != other.textSize
+                    || text.length() != other.text.length()) {
+                return false;
+            }
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) != other.text.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private final LinkedHashMap<Key, TextBlock> mBlocks    = new LinkedHashMap<>(16, 0.75f, true);
+    private final Key                           mProbe     = new Key();
+    private final int                           mMaxBytes;
+    private int                                 mBytes     = 0;
+    private volatile long                       mHits      = 0;
+    private volatile long                       mMisses    = 0;
+    private volatile long                       mEvictions = 0;
+
+    public TextBlockCache() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param maxBytes bytes of rendered blocks kept at most, a larger block is drawn but never cached
+     */
+    public TextBlockCache(int maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * OR text into a frame like GlyphAtlas.drawText, from the cache when it was drawn before.
+     * @param textSize size atlas was rasterized at, only used to tell the blocks apart
+     * @param align    ALIGN_LEFT, ALIGN_CENTER or ALIGN_RIGHT, the way x anchors the text
+     * @return the x position following the last drawn glyph
+     */
+    public int drawText(FrameBuffer frame, GlyphAtlas atlas, float textSize, int x, int y, CharSequence text, int align) {
+        TextBlock block = get(atlas, textSize, text, align);
+        if (block == null) {
+            return x;
+        }
+
+        int left = x + block.offsetX;
+        frame.blit(block.bitmap.getBytes(), block.bitmap.getWidth(), block.rows, left, y + block.top, FrameBuffer.OP_SET);
+        return left + block.advance;
+    }
+
+    /**
+     * @return the block of text, rendered now if it isn't cached, or null for an empty text
+     */
+    public TextBlock get(GlyphAtlas atlas, float textSize, CharSequence text, int align) {
+        if (text.length() == 0) {
+            return null;
+        }
+
+        TextBlock block = mBlocks.get(mProbe.set(text, textSize, align));
+        mProbe.text = null;
+        if (block != null) {
+            mHits++;
+            return block;
+        }
+
+        mMisses++;
+        block = render(atlas, text, align);
+        int bytes = block.bitmap.getBytes().length;
+        if (bytes <= mMaxBytes) {
+            mBlocks.put(new Key().set(text.toString(), textSize, align), block);
+            mBytes += bytes;
+            trimToSize();
+        }
+        return block;
+    }
+
+    private static TextBlock render(GlyphAtlas atlas, CharSequence text, int align) {
+        int advance = atlas.measureText(text);
+        int rows    = atlas.getCellHeight();
+        int height  = (rows + BitPerBank - 1) / BitPerBank * BitPerBank;
+        FrameBuffer bitmap = new FrameBuffer(Math.max(advance, 1), height);
+        atlas.drawText(bitmap, 0, -atlas.getCellTop(), text);
+
+        int offsetX = 0;
+        switch (align) {
+            case ALIGN_CENTER: offsetX = -advance / 2; break;
+            case ALIGN_RIGHT:  offsetX = -advance;     break;
+        }
+        return new TextBlock(bitmap, rows, atlas.getCellTop(), offsetX, advance);
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<Key, TextBlock>> iterator = mBlocks.entrySet().iterator();
+        while (mBytes > mMaxBytes && iterator.hasNext()) {
+            mBytes -= iterator.next().getValue().bitmap.getBytes().length;
+            iterator.remove();
+            mEvictions++;
+        }
+    }
+
+    public void clear() {
+        mBlocks.clear();
+        mBytes = 0;
+    }
+
+    public int size() {
+        return mBlocks.size();
+    }
+
+    public int getBytes() {
+        return mBytes;
+    }
+
+    public int getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    public long getHits() {
+        return mHits;
+    }
+
+    public long getMisses() {
+        return mMisses;
+    }
+
+    public long getEvictions() {
+        return mEvictions;
+    }
+}
@@ -0,0 +1,86 @@
+package com.cocoonshu.example.pilauncher;
+
+import android.speech.tts.TextToSpeech;
+import android.speech.tts.UtteranceProgressListener;
+import android.util.Log;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The TextToSpeech engine behind an AnnouncementCache.
+ * A clip is played as an earcon named after its file, queued with the
+ * live speech so both keep their order in the one queue. The text itself is
+ * never mapped to the clip, addSpeech() would keep that mapping after the
+ * cache deleted the file and the text would be lost instead of spoken live.
+ * The syntheses to a file are told apart from the spoken utterances by their
+ * utterance ids.
+ * @Author Cocoonshu
+ * @Date 2017-05-27
+ */
+public class TextToSpeechEngine implements AnnouncementCache.Engine {
+    private static final String TAG              = "TextToSpeechEngine";
+    private static final String UTTERANCE_PREFIX = "com.cocoonshu.example.pilauncher.UTTERANCE_";
+
+    private final TextToSpeech                        mTts;
+    private final ConcurrentHashMap<String, Callback> mSyntheses  = new ConcurrentHashMap<>();
+    private final AtomicInteger                       mUtterances = new AtomicInteger();
+
+    /**
+     * @param tts an initialized engine, its progress listener being taken over
+     */
+    public TextToSpeechEngine(TextToSpeech tts) {
+        mTts = tts;
+        mTts.setOnUtteranceProgressListener(new UtteranceProgressListener() {
+            @Override
+            public void onStart(String utteranceId) {
+            }
+
+            @Override
+            public void onDone(String utteranceId) {
+                onSynthesisEnded(utteranceId, true);
+            }
+
+            @Override
+            public void onError(String utteranceId) {
+                onSynthesisEnded(utteranceId, false);
+            }
+        });
+    }
+
+    @Override
+    public void speak(String text) {
+        mTts.speak(text, TextToSpeech.QUEUE_ADD, null, nextUtteranceId());
+    }
+
+    @Override
+    public void play(String text, File clip) {
+        String earcon = clip.getName();
+        mTts.addEarcon(earcon, clip);
+        mTts.playEarcon(earcon, TextToSpeech.QUEUE_ADD, null, nextUtteranceId());
+    }
+
+    @Override
+    public boolean synthesize(String text, File file, Callback callback) {
+        String utteranceId = nextUtteranceId();
+        mSyntheses.put(utteranceId, callback);
+        if (mTts.synthesizeToFile(text, null, file, utteranceId) != TextToSpeech.SUCCESS) {
+            Log.w(TAG, "[synthesize] Could not synthesize \"" + text + "\"");
+            mSyntheses.remove(utteranceId);
+            return false;
+        }
+        return true;
+    }
+
+    private String nextUtteranceId() {
+        return UTTERANCE_PREFIX + mUtterances.incrementAndGet();
+    }
+
+    private void onSynthesisEnded(String utteranceId, boolean success) {
+        Callback callback = mSyntheses.remove(utteranceId);
+        if (callback != null) {
+            callback.onSynthesized(success);
+        }
+    }
+}
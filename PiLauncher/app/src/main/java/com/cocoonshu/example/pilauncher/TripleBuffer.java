@@ -0,0 +1,100 @@
+package com.cocoonshu.example.pilauncher;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free triple buffer handing frames from one render thread to one
+ * transmit thread. The render thread owns the back buffer, the transmit thread
+ * the front buffer, and the middle one is exchanged with a single atomic swap
+ * by whichever side publishes or acquires, so neither side ever waits for the
+ * other. A frame published before the previous one was acquired replaces it.
+ * @Author Cocoonshu
+ * @Date 2017-05-17
+ */
+public class TripleBuffer {
+    private static final int INDEX_MASK = 0x03;
+    private static final int FRESH      = 0x04;
+
+    private final FrameBuffer[] mBuffers    = new FrameBuffer[3];
+    private final long[]        mTimestamps = new long[3];
+    private final AtomicInteger mMiddle     = new AtomicInteger(1);
+    private int                 mBack       = 0;
+    private int                 mFront      = 2;
+    private volatile long       mPublished  = 0;
+    private volatile long       mSuperseded = 0;
+
+    public TripleBuffer(int width, int height) {
+        for (int i = 0; i < mBuffers.length; i++) {
+            mBuffers[i] = new FrameBuffer(width, height);
+        }
+    }
+
+    /**
+     * @return the buffer to render the next frame into, render thread only
+     */
+    public FrameBuffer getBack() {
+        return mBuffers[mBack];
+    }
+
+    /**
+     * Hand the back buffer over to the transmit thread, render thread only.
+     * The back buffer is then one of the older frames, its content is undefined.
+     * @return true if the frame published before was never acquired
+     */
+    public boolean publish() {
+        return publish(0);
+    }
+
+    /**
+     * @param timestamp time the frame was rendered at, handed over with it
+     */
+    public boolean publish(long timestamp) {
+        mTimestamps[mBack] = timestamp;
+        int previous = mMiddle.getAndSet(mBack | FRESH);
+        mBack = previous & INDEX_MASK;
+        mPublished++;
+        if ((previous & FRESH) != 0) {
+            mSuperseded++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Take the latest published frame as the front buffer, transmit thread only.
+     * @return the new front buffer, or null if nothing was published since the last call
+     */
+    public FrameBuffer acquire() {
+        // Only acquire() clears FRESH, so it can't go away between the check and the swap
+        if ((mMiddle.get() & FRESH) == 0) {
+            return null;
+        }
+        mFront = mMiddle.getAndSet(mFront) & INDEX_MASK;
+        return mBuffers[mFront];
+    }
+
+    /**
+     * @return the frame acquired last, transmit thread only
+     */
+    public FrameBuffer getFront() {
+        return mBuffers[mFront];
+    }
+
+    /**
+     * @return the timestamp published with the front buffer, transmit thread only
+     */
+    public long getFrontTimestamp() {
+        return mTimestamps[mFront];
+    }
+
+    public long getPublishedFrames() {
+        return mPublished;
+    }
+
+    /**
+     * @return frames replaced by a newer one before the transmit thread took them
+     */
+    public long getSupersededFrames() {
+        return mSuperseded;
+    }
+}
@@ -0,0 +1,63 @@
+package com.cocoonshu.example.pilauncher;
+
+/**
+ * Value moving from one number to another over a duration of animation
+ * time. The tween starts on the first step it is asked for, so it can be
+ * set up on any thread without knowing the time of the AnimationClock.
+ * @Author Cocoonshu
+ * @Date 2017-05-30
+ */
+public class Tween {
+    public static final int EASE_LINEAR = 0;
+    public static final int EASE_IN_OUT = 1;
+    public static final int EASE_OUT    = 2;
+
+    private final int  mFrom;
+    private final int  mTo;
+    private final long mDuration;
+    private final int  mEasing;
+    private long       mStartTime = -1;
+
+    /**
+     * @param duration ms of animation time, 0 to jump to the end at the first step
+     * @param easing   EASE_LINEAR, EASE_IN_OUT or EASE_OUT
+     */
+    public Tween(int from, int to, long duration, int easing) {
+        mFrom     = from;
+        mTo       = to;
+        mDuration = Math.max(duration, 0);
+        mEasing   = easing;
+    }
+
+    public int getFrom() {
+        return mFrom;
+    }
+
+    public int getTo() {
+        return mTo;
+    }
+
+    /**
+     * @param time animation time, the tween starting at the first time given
+     * @return the value at time
+     */
+    public int getValue(long time) {
+        if (mStartTime < 0) {
+            mStartTime = time;
+        }
+        if (isFinished(time)) {
+            return mTo;
+        }
+
+        float t = (time - mStartTime) / (float) mDuration;
+        switch (mEasing) {
+            case EASE_IN_OUT: t = t * t * (3 - 2 * t); break;
+            case EASE_OUT:    t = 1 - (1 - t) * (1 - t); break;
+        }
+        return mFrom + Math.round((mTo - mFrom) * t);
+    }
+
+    public boolean isFinished(long time) {
+        return mStartTime >= 0 && time - mStartTime >= mDuration;
+    }
+}
@@ -0,0 +1,164 @@
+package com.cocoonshu.example.pilauncher;
+
+/**
+ * Element of a retained widget tree drawn by a PanelDriver.
+ * A widget owns a rectangle of the frame, in frame coordinates, and keeps the
+ * model value it shows. Changing the value from any thread marks the widget
+ * dirty and walks up to the root, which asks the driver for a render pass,
+ * and that pass only clears and redraws the dirty widgets, so the frame
+ * flushed afterwards differs in their banks only. An animated widget also
+ * moves with the AnimationClock of the driver, which steps it on every frame
+ * while it reports it is animating, see animate().
+ * @Author Cocoonshu
+ * @Date 2017-05-23
+ */
+public abstract class Widget {
+
+    /**
+     * What widgets draw with, owned by the driver thread
+     */
+    public static final class DrawContext {
+        public FrameBuffer    frame;
+        public GlyphAtlas     atlas;
+        public TextBlockCache textCache;
+        public float          textSize;
+    }
+
+    protected final int          mX;
+    protected final int          mY;
+    protected final int          mWidth;
+    protected final int          mHeight;
+    volatile boolean             mDirty   = true;
+    private volatile boolean     mVisible = true;
+    private volatile WidgetGroup mParent  = null;
+
+    public Widget(int x, int y, int width, int height) {
+        mX      = x;
+        mY      = y;
+        mWidth  = width;
+        mHeight = height;
+    }
+
+    public int getX() {
+        return mX;
+    }
+
+    public int getY() {
+        return mY;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public WidgetGroup getParent() {
+        return mParent;
+    }
+
+    void setParent(WidgetGroup parent) {
+        mParent = parent;
+    }
+
+    /**
+     * A hidden widget leaves its rectangle blank
+     */
+    public void setVisible(boolean visible) {
+        if (mVisible != visible) {
+            mVisible = visible;
+            invalidate();
+        }
+    }
+
+    public boolean isVisible() {
+        return mVisible;
+    }
+
+    public boolean isDirty() {
+        return mDirty;
+    }
+
+    /**
+     * Have the widget drawn again on the next render pass, from any thread
+     */
+    public void invalidate() {
+        mDirty = true;
+        WidgetGroup parent = mParent;
+        if (parent != null) {
+            parent.onChildInvalidated();
+        }
+    }
+
+    /**
+     * Have the driver step the animations of the tree, from any thread, once
+     * the widget starts animating
+     */
+    protected void startAnimation() {
+        WidgetGroup parent = mParent;
+        if (parent != null) {
+            parent.onChildAnimationStarted();
+        }
+    }
+
+    /**
+     * @return true while the widget changes with the animation time
+     */
+    public boolean isAnimating() {
+        return false;
+    }
+
+    /**
+     * Move the animations of the widget to time, driver thread only, and
+     * invalidate it if what it draws changed
+     * @param time animation time in ms, see AnimationClock
+     * @return true if it goes on animating after time
+     */
+    public boolean animate(long time) {
+        return false;
+    }
+
+    /**
+     * Redraw the widget if it is dirty, driver thread only. The flag is
+     * cleared before the value is read, so a change made meanwhile marks the
+     * widget dirty again for the next pass instead of being lost.
+     * @return true if the frame changed
+     */
+    public boolean render(DrawContext context) {
+        if (!mDirty) {
+            return false;
+        }
+
+        mDirty = false;
+        context.frame.clearRect(mX, mY, mWidth, mHeight);
+        if (mVisible) {
+            onDraw(context);
+        }
+        return true;
+    }
+
+    /**
+     * Draw the widget into its rectangle, which is blank
+     */
+    protected abstract void onDraw(DrawContext context);
+
+    /**
+     * @return true if both hold the same characters, null being equal to null only
+     */
+    static boolean contentEquals(CharSequence a, CharSequence b) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null || a.length() != b.length()) {
+            return false;
+        }
+        for (int i = 0; i < a.length(); i++) {
+            if (a.charAt(i) != b.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
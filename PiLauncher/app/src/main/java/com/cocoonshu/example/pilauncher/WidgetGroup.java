@@ -0,0 +1,153 @@
+package com.cocoonshu.example.pilauncher;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Widget holding other widgets, placed in frame coordinates within its
+ * rectangle. A dirty child only marks the groups above it, so a render pass
+ * walks down the marked branches and skips the rest of the tree. The root
+ * group is attached to a Host, the driver, which it asks for a render pass
+ * when something below it changes, and to step the animations when one
+ * starts below it.
+ * @Author Cocoonshu
+ * @Date 2017-05-23
+ */
+public class WidgetGroup extends Widget {
+
+    /**
+     * Told about the invalidations of a root group, from the thread changing the widget
+     */
+    public interface Host {
+        void onInvalidated();
+
+        void onAnimationStarted();
+    }
+
+    private final CopyOnWriteArrayList<Widget> mChildren   = new CopyOnWriteArrayList<>();
+    private volatile boolean                   mChildDirty = false;
+    private volatile Host                      mHost       = null;
+
+    public WidgetGroup(int x, int y, int width, int height) {
+        super(x, y, width, height);
+    }
+
+    public void addChild(Widget child) {
+        child.setParent(this);
+        mChildren.add(child);
+        child.invalidate();
+        if (child.isAnimating()) {
+            onChildAnimationStarted();
+        }
+    }
+
+    /**
+     * Remove a child, its rectangle being cleared on the next render pass
+     */
+    public void removeChild(Widget child) {
+        if (mChildren.remove(child)) {
+            child.setParent(null);
+            invalidate();
+        }
+    }
+
+    public int getChildCount() {
+        return mChildren.size();
+    }
+
+    public Widget getChildAt(int index) {
+        return mChildren.get(index);
+    }
+
+    void setHost(Host host) {
+        mHost = host;
+    }
+
+    void onChildInvalidated() {
+        mChildDirty = true;
+        WidgetGroup parent = getParent();
+        if (parent != null) {
+            parent.onChildInvalidated();
+            return;
+        }
+        Host host = mHost;
+        if (host != null) {
+            host.onInvalidated();
+        }
+    }
+
+    void onChildAnimationStarted() {
+        WidgetGroup parent = getParent();
+        if (parent != null) {
+            parent.onChildAnimationStarted();
+            return;
+        }
+        Host host = mHost;
+        if (host != null) {
+            host.onAnimationStarted();
+        }
+    }
+
+    @Override
+    public void invalidate() {
+        super.invalidate();
+        if (getParent() == null) {
+            Host host = mHost;
+            if (host != null) {
+                host.onInvalidated();
+            }
+        }
+    }
+
+    @Override
+    public boolean isAnimating() {
+        for (int i = 0; i < mChildren.size(); i++) {
+            if (mChildren.get(i).isAnimating()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Step every child, hidden ones too so they are where they should be once shown
+     */
+    @Override
+    public boolean animate(long time) {
+        boolean animating = false;
+        for (int i = 0; i < mChildren.size(); i++) {
+            animating |= mChildren.get(i).animate(time);
+        }
+        return animating;
+    }
+
+    /**
+     * A dirty group is cleared and redrawn whole, otherwise only its dirty children are
+     */
+    @Override
+    public boolean render(DrawContext context) {
+        boolean drawn = false;
+        if (mDirty) {
+            for (int i = 0; i < mChildren.size(); i++) {
+                mChildren.get(i).mDirty = true;
+            }
+            mChildDirty = true;
+            drawn = super.render(context);
+        } else if (!mChildDirty) {
+            return false;
+        }
+
+        mChildDirty = false;
+        if (!isVisible()) {
+            return drawn;
+        }
+        for (int i = 0; i < mChildren.size(); i++) {
+            drawn |= mChildren.get(i).render(context);
+        }
+        return drawn;
+    }
+
+    @Override
+    protected void onDraw(DrawContext context) {
+        // Nothing of its own, the children draw after the rectangle is cleared
+    }
+}
@@ -0,0 +1,134 @@
+package com.cocoonshu.example.pilauncher;
+
+import java.io.IOException;
+
+/**
+ * DisplayBus decorator keeping a copy of what is written to the SPI device.
+ * While capturing, each write is appended to the capture with the level of
+ * the DC line it was sent with, as FrameTrace lays the wire bytes out, until
+ * the owner takes the capture and resets it. Every call goes on to the
+ * wrapped bus unchanged. The writes and the capture are for one thread, the
+ * one owning the bus.
+ * @Author Cocoonshu
+ * @Date 2017-05-29
+ */
+public class WireTap implements DisplayBus {
+    /**
+     * Captured bytes kept at most between two resets, the writes beyond it are dropped
+     */
+    public static final int MAX_CAPTURE_BYTES = 16 * 1024;
+
+    private final DisplayBus mBus;
+    private volatile boolean mCapturing    = false;
+    private boolean          mDataMode     = false;
+    private byte[]           mCapture      = new byte[256];
+    private int              mCaptureSize  = 0;
+    private int              mWrittenBytes = 0;
+    private volatile long    mDroppedBytes = 0;
+
+    public WireTap(DisplayBus bus) {
+        mBus = bus;
+    }
+
+    /**
+     * @param capturing true to copy the writes from now on
+     */
+    public void setCapturing(boolean capturing) {
+        mCapturing = capturing;
+    }
+
+    public boolean isCapturing() {
+        return mCapturing;
+    }
+
+    /**
+     * @return the capture, valid up to getCaptureSize() until the next write
+     */
+    public byte[] getCapture() {
+        return mCapture;
+    }
+
+    public int getCaptureSize() {
+        return mCaptureSize;
+    }
+
+    /**
+     * @return bytes of the writes in the capture, without their headers
+     */
+    public int getCapturedBytes() {
+        return mWrittenBytes;
+    }
+
+    /**
+     * @return bytes written but left out of the captures, which were full
+     */
+    public long getDroppedBytes() {
+        return mDroppedBytes;
+    }
+
+    public void reset() {
+        mCaptureSize  = 0;
+        mWrittenBytes = 0;
+    }
+
+    private void captureInner(byte[] buffer, int length) {
+        int size = mCaptureSize + 5 + length;
+        if (size > MAX_CAPTURE_BYTES) {
+            mDroppedBytes += length;
+            return;
+        }
+        if (size > mCapture.length) {
+            byte[] capture = new byte[Math.min(MAX_CAPTURE_BYTES, Math.max(size, mCapture.length * 2))];
+            System.arraycopy(mCapture, 0, capture, 0, mCaptureSize);
+            mCapture = capture;
+        }
+        mCaptureSize = FrameTrace.putVarint(mCapture, mCaptureSize, ((long) length << 1) | (mDataMode ? 1 : 0));
+        System.arraycopy(buffer, 0, mCapture, mCaptureSize, length);
+        mCaptureSize  += length;
+        mWrittenBytes += length;
+    }
+
+    @Override
+    public void open() throws IOException {
+        mBus.open();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mBus.close();
+    }
+
+    @Override
+    public void setDataMode(boolean data) throws IOException {
+        mBus.setDataMode(data);
+        mDataMode = data;
+    }
+
+    @Override
+    public void setSelected(boolean selected) throws IOException {
+        mBus.setSelected(selected);
+    }
+
+    @Override
+    public void setReset(boolean asserted) throws IOException {
+        mBus.setReset(asserted);
+    }
+
+    @Override
+    public void setBacklight(boolean on) throws IOException {
+        mBus.setBacklight(on);
+    }
+
+    @Override
+    public boolean isBacklightOn() throws IOException {
+        return mBus.isBacklightOn();
+    }
+
+    @Override
+    public void write(byte[] buffer, int length) throws IOException {
+        mBus.write(buffer, length);
+        if (mCapturing) {
+            captureInner(buffer, length);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.cocoonshu.example.pilauncher.benchmark;
+
+import com.cocoonshu.example.pilauncher.AnnouncementCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Checks the AnnouncementCache against a FakeSpeechEngine on a plain JVM:
+ * a phrase without its clip is spoken live, a prepared one is played from
+ * its clip once synthesized, the clips are bounded by their total size the
+ * least recently announced going first, and that order is read back from
+ * the files when the cache is created again over the same directory, as
+ * after a restart. Exits with 1 on the first failure.
+ * Usage: ./gradlew :benchmark:checkAnnouncementCache
+ * @Author Cocoonshu
+ * @Date 2017-05-27
+ */
+public class AnnouncementCacheCheck {
+    private static final int CLIP_BYTES = 1000;
+
+    private static int sChecks = 0;
+
+    public static void main(String[] args) throws IOException {
+        File directory = Files.createTempDirectory("announcements").toFile();
+        try {
+            checkMissAndHit(new File(directory, "hit"));
+            checkEviction(new File(directory, "eviction"));
+            checkRestart(new File(directory, "restart"));
+        } finally {
+            delete(directory);
+        }
+        System.out.println(sChecks + " checks passed");
+    }
+
+    private static void checkMissAndHit(File directory) {
+        FakeSpeechEngine  engine = new FakeSpeechEngine(CLIP_BYTES);
+        AnnouncementCache cache  = new AnnouncementCache(engine, directory, 10 * CLIP_BYTES);
+
+        check(!cache.announce("Hello"), "miss reported as a hit");
+        check(engine.getSpoken().contains("Hello"), "miss not spoken live");
+
+        cache.prepare("Hello", "Hello");
+        check(engine.getSyntheses() == 1, "same phrase synthesized twice while pending");
+        check(!cache.contains("Hello"), "clip usable before its synthesis is done");
+        engine.finishSyntheses();
+        check(cache.contains("Hello"), "prepared clip not cached");
+
+        check(cache.announce("Hello"), "prepared phrase not played from its clip");
+        List<File> played = engine.getPlayed();
+        check(played.size() == 1 && played.get(0).isFile(), "clip not played or missing");
+        check(engine.getSpoken().size() == 1, "hit also spoken live");
+        check(cache.getHits() == 1 && cache.getMisses() == 1, "hit and miss counts");
+
+        cache.prepare("Hello");
+        check(engine.getSyntheses() == 1, "cached phrase synthesized again");
+    }
+
+    private static void checkEviction(File directory) {
+        FakeSpeechEngine  engine = new FakeSpeechEngine(CLIP_BYTES);
+        AnnouncementCache cache  = new AnnouncementCache(engine, directory, 3 * CLIP_BYTES);
+
+        cache.prepare("One", "Two", "Three");
+        engine.finishSyntheses();
+        check(cache.getClipCount() == 3, "clips within the bound not all kept");
+
+        // One becomes the most recently announced, Two the eldest
+        cache.announce("One");
+        cache.prepare("Four");
+        engine.finishSyntheses();
+        check(cache.getSizeBytes() <= cache.getMaxBytes(), "size above the bound");
+        check(cache.getClipCount() == 3, "clip count after eviction");
+        check(!cache.contains("Two"), "least recently announced clip kept");
+        check(cache.contains("One") && cache.contains("Three") && cache.contains("Four"), "wrong clip evicted");
+        check(clipFiles(directory) == 3, "evicted clip file not deleted");
+
+        check(!cache.announce("Two"), "evicted phrase played from a clip");
+        check(engine.getSpoken().contains("Two"), "evicted phrase not spoken live");
+    }
+
+    private static void checkRestart(File directory) {
+        FakeSpeechEngine  engine = new FakeSpeechEngine(CLIP_BYTES);
+        AnnouncementCache cache  = new AnnouncementCache(engine, directory, 3 * CLIP_BYTES);
+        cache.prepare("One", "Two", "Three");
+        engine.finishSyntheses();
+
+        // Synthesized a while ago one after the other, then One announced now
+        long now = System.currentTimeMillis();
+        backdate(cache, engine, "One", now - 30000);
+        backdate(cache, engine, "Two", now - 20000);
+        backdate(cache, engine, "Three", now - 10000);
+        cache.announce("One");
+        check(clipFiles(directory) == 3, "clips not written");
+
+        // Restarted with room for two clips, Two being the least recently announced
+        FakeSpeechEngine  restarted = new FakeSpeechEngine(CLIP_BYTES);
+        AnnouncementCache reloaded  = new AnnouncementCache(restarted, directory, 2 * CLIP_BYTES);
+        check(reloaded.getClipCount() == 2, "clips not reloaded within the bound");
+        check(!reloaded.contains("Two"), "least recently announced clip kept across the restart");
+        check(reloaded.contains("One") && reloaded.contains("Three"), "recent clips lost across the restart");
+
+        reloaded.prepare("Four");
+        restarted.finishSyntheses();
+        check(reloaded.contains("One") && !reloaded.contains("Three"), "reloaded order not least recent first");
+        check(reloaded.announce("One") && restarted.getSpoken().isEmpty(), "reloaded clip not played");
+    }
+
+    /**
+     * Set the time the clip of text was last announced, the clip being found by announcing it
+     */
+    private static void backdate(AnnouncementCache cache, FakeSpeechEngine engine, String text, long time) {
+        check(cache.announce(text), "clip of \"" + text + "\" not played");
+        List<File> played = engine.getPlayed();
+        check(played.get(played.size() - 1).setLastModified(time), "clip time not set");
+    }
+
+    private static int clipFiles(File directory) {
+        File[] files = directory.listFiles();
+        return files != null ? files.length : 0;
+    }
+
+    private static void check(boolean condition, String failure) {
+        sChecks++;
+        if (!condition) {
+            System.out.println("Failed: " + failure);
+            System.exit(1);
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,74 @@
+package com.cocoonshu.example.pilauncher.benchmark;
+
+import com.cocoonshu.example.pilauncher.DisplayBus;
+import com.cocoonshu.example.pilauncher.FrameBuffer;
+import com.cocoonshu.example.pilauncher.FrameFlusher;
+import com.cocoonshu.example.pilauncher.GlyphAtlas;
+import com.cocoonshu.example.pilauncher.PanelController;
+import com.cocoonshu.example.pilauncher.Pcd8544Controller;
+import com.cocoonshu.example.pilauncher.ShadowedBus;
+import com.cocoonshu.example.pilauncher.SimulatedBus;
+import com.cocoonshu.example.pilauncher.Ssd1306Controller;
+
+import java.io.IOException;
+
+/**
+ * Runs driver strategies against SimulatedBus and prints the achievable
+ * frames/sec and bus utilisation of each, no panel needed.
+ * Usage: ./gradlew :benchmark:simulate [-PsimulateArgs="clockHz toggleNs writeNs refreshRate"]
+ * @Author Cocoonshu
+ * @Date 2017-05-10
+ */
+public class BusSimulation {
+    private static final int      FRAMES       = 1000;
+    private static final String[] STATUS_LINES = { "192.168.1.100", "192.168.1.101", "192.168.1.102" };
+
+    public static void main(String[] args) throws IOException {
+        int    clockHz     = args.length > 0 ? Integer.parseInt(args[0]) : SimulatedBus.DEFAULT_CLOCK_HZ;
+        long   toggleNs    = args.length > 1 ? Long.parseLong(args[1])   : SimulatedBus.DEFAULT_TOGGLE_NS;
+        long   writeNs     = args.length > 2 ? Long.parseLong(args[2])   : SimulatedBus.DEFAULT_WRITE_NS;
+        double refreshRate = args.length > 3 ? Double.parseDouble(args[3]) : 30;
+
+        System.out.println(String.format("SPI %d Hz, %d ns/toggle, %d ns/transfer, utilisation at %.0f fps",
+                clockHz, toggleNs, writeNs, refreshRate));
+        PanelController pcd8544 = new Pcd8544Controller();
+        PanelController ssd1306 = new Ssd1306Controller();
+        report("full frames", simulate(new SimulatedBus(clockHz, toggleNs, writeNs), pcd8544, true, false), refreshRate);
+        report("dirty spans", simulate(new SimulatedBus(clockHz, toggleNs, writeNs), pcd8544, false, false), refreshRate);
+        report("ssd1306 full", simulate(new SimulatedBus(clockHz, toggleNs, writeNs), ssd1306, true, true), refreshRate);
+        report("ssd1306", simulate(new SimulatedBus(clockHz, toggleNs, writeNs), ssd1306, false, true), refreshRate);
+    }
+
+    /**
+     * Push FRAMES status line updates through a FrameFlusher
+     * @param fullFrames resend the whole frame every time, like the driver used to
+     * @param shadowPins elide redundant GPIO writes through a ShadowedBus, which
+     *                   changes nothing here, a batch never repeats a DC or CS write
+     */
+    private static SimulatedBus simulate(SimulatedBus simulated, PanelController controller,
+                                         boolean fullFrames, boolean shadowPins) throws IOException {
+        DisplayBus   bus     = shadowPins ? new ShadowedBus(simulated) : simulated;
+        FrameBuffer  frame   = new FrameBuffer(controller.getWidth(), controller.getHeight());
+        FrameFlusher flusher = new FrameFlusher(controller);
+        GlyphAtlas   atlas   = DriverBenchmark.createAtlas();
+        simulated.setRecording(false);
+        bus.open();
+        for (int i = 0; i < FRAMES; i++) {
+            frame.clearRect(0, 0, controller.getWidth(), 12);
+            atlas.drawText(frame, 0, 12, STATUS_LINES[i % STATUS_LINES.length]);
+            if (fullFrames) {
+                flusher.invalidate();
+            }
+            flusher.flush(frame, bus);
+        }
+        bus.close();
+        return simulated;
+    }
+
+    private static void report(String name, SimulatedBus bus, double refreshRate) {
+        System.out.println(String.format("%-12s %8.1f us/frame %8.1f fps max %6.1f%% bus %8.1f bytes/frame %6.1f toggles/frame",
+                name, bus.getAverageFrameNs() / 1000.0, bus.getAchievableFps(), bus.getUtilisation(refreshRate) * 100,
+                (double) (bus.getDataBytes() + bus.getCommandBytes()) / bus.getFrames(),
+                (double) bus.getToggles() / bus.getFrames()));
+    }
+}
@@ -0,0 +1,118 @@
+package com.cocoonshu.example.pilauncher.benchmark;
+
+import com.cocoonshu.example.pilauncher.DrawCommandQueue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DrawCommandQueue on its own: one draw call going through an idle queue,
+ * and three threads drawing into a full queue while the driver thread
+ * drains it, dropping or coalescing. POLICY_BLOCK is left out, a producer
+ * waiting when the consumer thread stops at the end of an iteration would
+ * never return. With -prof gc the allocations per op should be zero.
+ * @Author Cocoonshu
+ * @Date 2017-05-22
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandQueueBenchmark {
+    private static final String[] IP_ADDRESSES = { "192.168.1.100", "192.168.1.101" };
+
+    @State(Scope.Thread)
+    public static class Idle {
+        DrawCommandQueue             queue   = new DrawCommandQueue(32);
+        DrawCommandQueue.DrawCommand command = new DrawCommandQueue.DrawCommand();
+        int                          frameId = 0;
+    }
+
+    @State(Scope.Group)
+    public static class Shared {
+        DrawCommandQueue queue = new DrawCommandQueue(32);
+    }
+
+    @State(Scope.Group)
+    public static class DropOldest extends Shared {
+        public DropOldest() {
+            queue.setPolicy(DrawCommandQueue.POLICY_DROP_OLDEST);
+        }
+    }
+
+    @State(Scope.Group)
+    public static class Coalesce extends Shared {
+        public Coalesce() {
+            queue.setPolicy(DrawCommandQueue.POLICY_COALESCE);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Consumer {
+        DrawCommandQueue.DrawCommand command = new DrawCommandQueue.DrawCommand();
+    }
+
+    @State(Scope.Thread)
+    public static class Producer {
+        int frameId = 0;
+    }
+
+    /**
+     * drawText() then the driver thread taking it, no contention
+     */
+    @Benchmark
+    public Object offerPoll(Idle state) {
+        state.queue.offer(DrawCommandQueue.TYPE_DRAW_TEXT, 0, 12, 0, 0, IP_ADDRESSES[state.frameId++ & 1]);
+        state.queue.poll(state.command);
+        return state.command.payload;
+    }
+
+    @Benchmark
+    @Group("dropOldest")
+    @GroupThreads(3)
+    public boolean dropOldestOffer(DropOldest shared, Producer producer) {
+        return offer(shared, producer);
+    }
+
+    @Benchmark
+    @Group("dropOldest")
+    @GroupThreads(1)
+    public boolean dropOldestPoll(DropOldest shared, Consumer consumer) {
+        return shared.queue.poll(consumer.command);
+    }
+
+    @Benchmark
+    @Group("coalesce")
+    @GroupThreads(3)
+    public boolean coalesceOffer(Coalesce shared, Producer producer) {
+        return offer(shared, producer);
+    }
+
+    @Benchmark
+    @Group("coalesce")
+    @GroupThreads(1)
+    public boolean coalescePoll(Coalesce shared, Consumer consumer) {
+        return shared.queue.poll(consumer.command);
+    }
+
+    /**
+     * A status line per producer, redrawn with a new value each time
+     */
+    private static boolean offer(Shared shared, Producer producer) {
+        int frameId = producer.frameId++;
+        int line    = (int) (Thread.currentThread().getId() & 3) * 12;
+        return shared.queue.offer(DrawCommandQueue.TYPE_DRAW_TEXT, 0, line, 0, 0, IP_ADDRESSES[frameId & 1]);
+    }
+}
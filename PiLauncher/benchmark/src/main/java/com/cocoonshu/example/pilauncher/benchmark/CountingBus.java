@@ -0,0 +1,74 @@
+package com.cocoonshu.example.pilauncher.benchmark;
+
+import com.cocoonshu.example.pilauncher.DisplayBus;
+
+/**
+ * Stub SPI/GPIO backend, only counting the traffic the driver generates.
+ * @Author Cocoonshu
+ * @Date 2017-05-08
+ */
+public class CountingBus implements DisplayBus {
+    private long mBytes   = 0;
+    private long mWrites  = 0;
+    private long mToggles = 0;
+    private long mFrames  = 0;
+
+    @Override
+    public void open() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void setDataMode(boolean data) {
+        mToggles++;
+    }
+
+    @Override
+    public void setSelected(boolean selected) {
+        mToggles++;
+    }
+
+    @Override
+    public void setReset(boolean asserted) {
+        mToggles++;
+    }
+
+    @Override
+    public void setBacklight(boolean on) {
+        mToggles++;
+    }
+
+    @Override
+    public boolean isBacklightOn() {
+        return false;
+    }
+
+    @Override
+    public void write(byte[] buffer, int length) {
+        mBytes += length;
+        mWrites++;
+    }
+
+    public void endFrame() {
+        mFrames++;
+    }
+
+    public void reset() {
+        mBytes   = 0;
+        mWrites  = 0;
+        mToggles = 0;
+        mFrames  = 0;
+    }
+
+    /**
+     * @return a per frame summary of the traffic since the last reset
+     */
+    public String report() {
+        long frames = Math.max(mFrames, 1);
+        return String.format("%d frames, %.1f bytes/frame, %.1f writes/frame, %.1f gpio toggles/frame",
+                mFrames, (double) mBytes / frames, (double) mWrites / frames, (double) mToggles / frames);
+    }
+}
@@ -0,0 +1,194 @@
+package com.cocoonshu.example.pilauncher.benchmark;
+
+import com.cocoonshu.example.pilauncher.Bar;
+import com.cocoonshu.example.pilauncher.FrameBuffer;
+import com.cocoonshu.example.pilauncher.FrameFlusher;
+import com.cocoonshu.example.pilauncher.GlyphAtlas;
+import com.cocoonshu.example.pilauncher.Icons;
+import com.cocoonshu.example.pilauncher.Marquee;
+import com.cocoonshu.example.pilauncher.Pcd8544Controller;
+import com.cocoonshu.example.pilauncher.StatusRow;
+import com.cocoonshu.example.pilauncher.TextBlockCache;
+import com.cocoonshu.example.pilauncher.Widget;
+import com.cocoonshu.example.pilauncher.WidgetGroup;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Nokia5110 hot paths on a plain JVM, each benchmark op being one frame
+ * pushed through FrameFlusher to a CountingBus. Bytes, writes and GPIO
+ * toggles per frame are printed at the end of each iteration, run with
+ * -prof gc for the allocations per frame (gc.alloc.rate.norm).
+ * @Author Cocoonshu
+ * @Date 2017-05-08
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DriverBenchmark {
+    private static final int      PIXEL_WIDTH  = 84;
+    private static final int      PIXEL_HEIGHT = 48;
+    private static final String[] IP_ADDRESSES = { "192.168.1.100", "192.168.1.101" };
+    private static final String   DEVICE_NAME  = "Connected to Cocoonshu's Bluetooth Speaker";
+
+    private FrameBuffer        mFrame       = new FrameBuffer(PIXEL_WIDTH, PIXEL_HEIGHT);
+    private FrameFlusher       mFlusher     = new FrameFlusher(new Pcd8544Controller());
+    private CountingBus        mBus         = new CountingBus();
+    private GlyphAtlas         mAtlas       = null;
+    private TextBlockCache     mTextCache   = new TextBlockCache();
+    private Marquee            mMarquee     = new Marquee(0, 36, PIXEL_WIDTH, DEVICE_NAME, Marquee.DEFAULT_SPEED, Marquee.DEFAULT_GAP);
+    private WidgetGroup        mWidgets     = new WidgetGroup(0, 0, PIXEL_WIDTH, PIXEL_HEIGHT);
+    private StatusRow          mStatusRow   = new StatusRow(0, 0, PIXEL_WIDTH, 12);
+    private Widget.DrawContext mDrawContext = new Widget.DrawContext();
+    private long               mTime        = 0;
+    private int                mFrameId     = 0;
+
+    /**
+     * Build a 6x12 atlas with a pattern per glyph, standing in for the
+     * rasterized Android font which is not available off the board
+     */
+    static GlyphAtlas createAtlas() {
+        int[]  widths  = new int[GlyphAtlas.GLYPH_COUNT];
+        long[] columns = new long[GlyphAtlas.GLYPH_COUNT * 6];
+        for (int i = 0; i < GlyphAtlas.GLYPH_COUNT; i++) {
+            widths[i] = 6;
+            for (int column = 0; column < 5; column++) {
+                columns[i * 6 + column] = ((i * 0x9E3779B1L) >>> (column * 3)) & 0x7FF;
+            }
+        }
+        return new GlyphAtlas(-12, 12, widths, columns);
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        mAtlas = createAtlas();
+        mMarquee.start(mTextCache.get(mAtlas, 12, DEVICE_NAME, TextBlockCache.ALIGN_LEFT), mTime);
+        createWidgets();
+        mFlusher.flush(mFrame, mBus);
+    }
+
+    /**
+     * The status screen of MainActivity, four rows of widgets
+     */
+    private void createWidgets() {
+        StatusRow deviceRow   = new StatusRow(0, 12, PIXEL_WIDTH, 12);
+        StatusRow playbackRow = new StatusRow(0, 24, PIXEL_WIDTH, 12);
+        Bar       volumeBar   = new Bar(0, 38, PIXEL_WIDTH, 8);
+        mStatusRow.setImage(Icons.WIFI);
+        mStatusRow.getLabel().setAlign(TextBlockCache.ALIGN_RIGHT);
+        deviceRow.setImage(Icons.BLUETOOTH);
+        deviceRow.setText(DEVICE_NAME);
+        playbackRow.setImage(Icons.PLAY);
+        playbackRow.setText("Playing");
+        volumeBar.setValue(10, 15);
+        mWidgets.addChild(mStatusRow);
+        mWidgets.addChild(deviceRow);
+        mWidgets.addChild(playbackRow);
+        mWidgets.addChild(volumeBar);
+        mDrawContext.frame     = mFrame;
+        mDrawContext.atlas     = mAtlas;
+        mDrawContext.textCache = mTextCache;
+        mDrawContext.textSize  = 12;
+        mWidgets.render(mDrawContext);
+    }
+
+    @Setup(Level.Iteration)
+    public void resetCounters() {
+        mBus.reset();
+    }
+
+    @TearDown(Level.Iteration)
+    public void reportCounters() {
+        System.out.println(" [" + mBus.report() + "]");
+    }
+
+    /**
+     * drawTextInner, a status line changing its last characters
+     */
+    @Benchmark
+    public int drawText() throws IOException {
+        mFrame.clearRect(0, 0, PIXEL_WIDTH, 12);
+        mAtlas.drawText(mFrame, 0, 12, IP_ADDRESSES[mFrameId++ & 1]);
+        int saved = mFlusher.flush(mFrame, mBus);
+        mBus.endFrame();
+        return saved;
+    }
+
+    /**
+     * drawTextInner with the strings already in the text cache, as the IP
+     * address redrawn by MainActivity
+     */
+    @Benchmark
+    public int drawTextCached() throws IOException {
+        mFrame.clearRect(0, 0, PIXEL_WIDTH, 12);
+        mTextCache.drawText(mFrame, mAtlas, 12, 0, 12, IP_ADDRESSES[mFrameId++ & 1], TextBlockCache.ALIGN_LEFT);
+        int saved = mFlusher.flush(mFrame, mBus);
+        mBus.endFrame();
+        return saved;
+    }
+
+    /**
+     * stepMarqueesInner, a device name scrolling by one pixel on the bottom line
+     */
+    @Benchmark
+    public int marqueeStep() throws IOException {
+        mTime = mMarquee.getNextStepTime(mTime);
+        mMarquee.update(mTime);
+        mMarquee.draw(mFrame);
+        int saved = mFlusher.flush(mFrame, mBus);
+        mBus.endFrame();
+        return saved;
+    }
+
+    /**
+     * renderWidgetsInner, the address of the status screen changing while
+     * the other widgets stay as they are
+     */
+    @Benchmark
+    public int widgetUpdate() throws IOException {
+        mStatusRow.setText(IP_ADDRESSES[mFrameId++ & 1]);
+        mWidgets.render(mDrawContext);
+        int saved = mFlusher.flush(mFrame, mBus);
+        mBus.endFrame();
+        return saved;
+    }
+
+    /**
+     * clearScreenInner following a full screen of content
+     */
+    @Benchmark
+    public int clearScreen() throws IOException {
+        mFrame.fill((mFrameId++ & 1) == 0 ? (byte) 0x00 : (byte) 0x55);
+        int saved = mFlusher.flush(mFrame, mBus);
+        mBus.endFrame();
+        return saved;
+    }
+
+    /**
+     * sendData of a whole frame, with the panel content unknown
+     */
+    @Benchmark
+    public int sendFullFrame() throws IOException {
+        mFlusher.invalidate();
+        int saved = mFlusher.flush(mFrame, mBus);
+        mBus.endFrame();
+        return saved;
+    }
+}
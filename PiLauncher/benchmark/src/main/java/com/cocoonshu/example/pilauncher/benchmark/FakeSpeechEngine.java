@@ -0,0 +1,85 @@
+package com.cocoonshu.example.pilauncher.benchmark;
+
+import com.cocoonshu.example.pilauncher.AnnouncementCache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stand-in for the TextToSpeech engine, recording what it is asked to say.
+ * A synthesis writes a clip of a fixed size at once but only reports it when
+ * finishSyntheses() is called, as the real engine does later on its own
+ * thread.
+ * @Author Cocoonshu
+ * @Date 2017-05-27
+ */
+public class FakeSpeechEngine implements AnnouncementCache.Engine {
+    private final int            mClipBytes;
+    private final List<String>   mSpoken    = new ArrayList<>();
+    private final List<File>     mPlayed    = new ArrayList<>();
+    private final List<Callback> mPending   = new ArrayList<>();
+    private int                  mSyntheses = 0;
+
+    /**
+     * @param clipBytes size of every clip synthesized
+     */
+    public FakeSpeechEngine(int clipBytes) {
+        mClipBytes = clipBytes;
+    }
+
+    @Override
+    public synchronized void speak(String text) {
+        mSpoken.add(text);
+    }
+
+    @Override
+    public synchronized void play(String text, File clip) {
+        mPlayed.add(clip);
+    }
+
+    @Override
+    public synchronized boolean synthesize(String text, File file, Callback callback) {
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(new byte[mClipBytes]);
+            } finally {
+                out.close();
+            }
+        } catch (IOException exp) {
+            return false;
+        }
+        mSyntheses++;
+        mPending.add(callback);
+        return true;
+    }
+
+    /**
+     * Report the syntheses started so far as done
+     */
+    public void finishSyntheses() {
+        List<Callback> pending;
+        synchronized (this) {
+            pending = new ArrayList<>(mPending);
+            mPending.clear();
+        }
+        for (Callback callback : pending) {
+            callback.onSynthesized(true);
+        }
+    }
+
+    public synchronized List<String> getSpoken() {
+        return new ArrayList<>(mSpoken);
+    }
+
+    public synchronized List<File> getPlayed() {
+        return new ArrayList<>(mPlayed);
+    }
+
+    public synchronized int getSyntheses() {
+        return mSyntheses;
+    }
+}
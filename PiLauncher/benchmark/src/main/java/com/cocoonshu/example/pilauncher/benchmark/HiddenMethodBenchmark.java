@@ -0,0 +1,91 @@
+package com.cocoonshu.example.pilauncher.benchmark;
+
+import com.cocoonshu.example.pilauncher.HiddenMethod;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One call of a hidden disconnect(device) method, the way A2dpSinkHelper
+ * used to make it, looking the method up with getMethod() each time, then
+ * through a HiddenMethod looked up in the shared cache as the helper does
+ * now, through a handle kept by an A2dpSinkAccessor, and as a plain call
+ * for reference. Profile stands in for BluetoothA2dpSink, the device is
+ * any object.
+ * @Author Cocoonshu
+ * @Date 2017-05-26
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HiddenMethodBenchmark {
+
+    /**
+     * Public methods of a class outside the API, as on the proxy
+     */
+    public static class Profile {
+        int mDisconnects = 0;
+
+        public boolean connect(Object device) {
+            return true;
+        }
+
+        public boolean disconnect(Object device) {
+            mDisconnects++;
+            return true;
+        }
+
+        public int getPriority(Object device) {
+            return 100;
+        }
+
+        public boolean setPriority(Object device, int priority) {
+            return true;
+        }
+
+        public boolean isA2dpPlaying(Object device) {
+            return false;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Target {
+        Profile      profile = new Profile();
+        Object       device  = new Object();
+        HiddenMethod handle  = HiddenMethod.of(Profile.class, "disconnect", Object.class);
+    }
+
+    @Benchmark
+    public Object uncached(Target state) throws Exception {
+        Method method = state.profile.getClass().getMethod("disconnect", Object.class);
+        return method.invoke(state.profile, state.device);
+    }
+
+    @Benchmark
+    public Object cached(Target state) throws Exception {
+        return HiddenMethod.of(state.profile.getClass(), "disconnect", Object.class)
+                .invoke(state.profile, state.device);
+    }
+
+    @Benchmark
+    public Object handle(Target state) throws Exception {
+        return state.handle.invoke(state.profile, state.device);
+    }
+
+    @Benchmark
+    public boolean direct(Target state) {
+        return state.profile.disconnect(state.device);
+    }
+}
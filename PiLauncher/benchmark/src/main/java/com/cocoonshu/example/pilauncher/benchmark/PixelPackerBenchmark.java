@@ -0,0 +1,122 @@
+package com.cocoonshu.example.pilauncher.benchmark;
+
+import com.cocoonshu.example.pilauncher.FrameBuffer;
+import com.cocoonshu.example.pilauncher.PixelPacker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per frame cost of converting an 84x48 ARGB frame to 1-bpp, the former
+ * row-major flushBufferInner loop against the table driven bank order kernel,
+ * and of RGB_565 and ALPHA_8 frames in a direct buffer packed in Java and in
+ * native-lib, the native one only when the jmh task could build it for the
+ * host. Reading a 565 surface back through getPixels() touches 32256 bytes
+ * of int[] a frame, written then read, copyPixelsToBuffer() touches 16128
+ * bytes of the buffer for RGB_565 and 8064 for ALPHA_8.
+ * @Author Cocoonshu
+ * @Date 2017-05-06
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PixelPackerBenchmark {
+    private static final int PIXEL_WIDTH          = 84;
+    private static final int PIXEL_HEIGHT         = 48;
+    private static final int BitPerWord           = 8;
+    private static final int COLOR_GARY_THRESHOLD = 0x80;
+
+    private int[]       mPixels       = new int[PIXEL_WIDTH * PIXEL_HEIGHT];
+    private byte[]      mBuffer       = new byte[PIXEL_WIDTH * PIXEL_HEIGHT / BitPerWord];
+    private FrameBuffer mFrame        = new FrameBuffer(PIXEL_WIDTH, PIXEL_HEIGHT);
+    private PixelPacker mThreshold    = new PixelPacker();
+    private PixelPacker mDither       = new PixelPacker();
+    private PixelPacker mJavaBuffer   = new PixelPacker();
+    private PixelPacker mNativeBuffer = new PixelPacker();
+    private ByteBuffer  mPixels565    = ByteBuffer.allocateDirect(PIXEL_WIDTH * PIXEL_HEIGHT * 2).order(ByteOrder.nativeOrder());
+    private ByteBuffer  mAlphas       = ByteBuffer.allocateDirect(PIXEL_WIDTH * PIXEL_HEIGHT);
+
+    @Setup
+    public void setup() {
+        Random random = new Random(5110);
+        for (int i = 0; i < mPixels.length; i++) {
+            mPixels[i] = 0xFF000000 | random.nextInt(0x01000000);
+        }
+        mDither.setMode(PixelPacker.MODE_BAYER_8X8);
+        for (int i = 0; i < PIXEL_WIDTH * PIXEL_HEIGHT; i++) {
+            mPixels565.putShort((short) random.nextInt(0x10000));
+        }
+        mPixels565.clear();
+        for (int i = 0; i < PIXEL_WIDTH * PIXEL_HEIGHT; i++) {
+            mAlphas.put((byte) random.nextInt(0x100));
+        }
+        mAlphas.clear();
+        mJavaBuffer.setNativeEnabled(false);
+    }
+
+    @Benchmark
+    public byte[] legacyRowMajor() {
+        Arrays.fill(mBuffer, (byte) 0x00);
+        for (int pixel = 0; pixel < PIXEL_WIDTH * PIXEL_HEIGHT; pixel++) {
+            int word  = pixel / BitPerWord;
+            int bit   = pixel % BitPerWord;
+            int color = mPixels[pixel];
+            int gary  = (((color >> 16) & 0xFF) + (((color >> 8) & 0xFF) << 2) + (color & 0xFF)) >> 2;
+            mBuffer[word] |= gary > COLOR_GARY_THRESHOLD ? (1 << bit) : 0;
+        }
+        return mBuffer;
+    }
+
+    @Benchmark
+    public FrameBuffer tableThreshold() {
+        mThreshold.pack(mPixels, mFrame);
+        return mFrame;
+    }
+
+    @Benchmark
+    public FrameBuffer tableBayer8x8() {
+        mDither.pack(mPixels, mFrame);
+        return mFrame;
+    }
+
+    @Benchmark
+    public FrameBuffer javaBuffer565() {
+        mJavaBuffer.pack(mPixels565, PixelPacker.FORMAT_RGB_565, mFrame);
+        return mFrame;
+    }
+
+    @Benchmark
+    public FrameBuffer nativeBuffer565() {
+        mNativeBuffer.pack(mPixels565, PixelPacker.FORMAT_RGB_565, mFrame);
+        return mFrame;
+    }
+
+    @Benchmark
+    public FrameBuffer javaBufferAlpha8() {
+        mJavaBuffer.pack(mAlphas, PixelPacker.FORMAT_ALPHA_8, mFrame);
+        return mFrame;
+    }
+
+    @Benchmark
+    public FrameBuffer nativeBufferAlpha8() {
+        mNativeBuffer.pack(mAlphas, PixelPacker.FORMAT_ALPHA_8, mFrame);
+        return mFrame;
+    }
+}
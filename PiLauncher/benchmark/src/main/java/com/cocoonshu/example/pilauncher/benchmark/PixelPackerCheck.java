@@ -0,0 +1,124 @@
+package com.cocoonshu.example.pilauncher.benchmark;
+
+import com.cocoonshu.example.pilauncher.PixelPacker;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks the native pixel kernel against the Java one, then times both.
+ * Random frames of the panel sizes and of widths that aren't a multiple of 8
+ * are packed in every mode and pixel format, in both byte orders for 565,
+ * and the bytes of the two kernels must match. The int[] kernel is the
+ * reference for the ARGB frames. Exits with 1 on the first mismatch, and
+ * with 2 if native-lib isn't in java.library.path.
+ * Usage: ./gradlew :benchmark:checkPixelPacker
+ * @Author Cocoonshu
+ * @Date 2017-05-28
+ */
+public class PixelPackerCheck {
+    private static final int[][] SIZES  = { { 84, 48 }, { 128, 64 }, { 13, 16 }, { 1, 8 }, { 250, 120 } };
+    private static final int[]   MODES  = {
+            PixelPacker.MODE_THRESHOLD, PixelPacker.MODE_BAYER_2X2,
+            PixelPacker.MODE_BAYER_4X4, PixelPacker.MODE_BAYER_8X8
+    };
+    private static final int     ROUNDS = 20;
+    private static final int     FRAMES = 20000;
+
+    public static void main(String[] args) {
+        if (!PixelPacker.isNativeAvailable()) {
+            System.out.println("native-lib not found in " + System.getProperty("java.library.path"));
+            System.exit(2);
+        }
+
+        Random      random  = new Random(5110);
+        PixelPacker nativeK = new PixelPacker();
+        PixelPacker javaK   = new PixelPacker();
+        javaK.setNativeEnabled(false);
+        int checked = 0;
+        for (int[] size : SIZES) {
+            for (int mode : MODES) {
+                nativeK.setMode(mode);
+                javaK.setMode(mode);
+                for (int round = 0; round < ROUNDS; round++) {
+                    checked += check(random, nativeK, javaK, size[0], size[1], PixelPacker.FORMAT_ARGB_8888, ByteOrder.nativeOrder());
+                    checked += check(random, nativeK, javaK, size[0], size[1], PixelPacker.FORMAT_RGB_565, ByteOrder.LITTLE_ENDIAN);
+                    checked += check(random, nativeK, javaK, size[0], size[1], PixelPacker.FORMAT_RGB_565, ByteOrder.BIG_ENDIAN);
+                    checked += check(random, nativeK, javaK, size[0], size[1], PixelPacker.FORMAT_ALPHA_8, ByteOrder.nativeOrder());
+                }
+            }
+        }
+        System.out.println(checked + " frames identical");
+
+        for (int mode : new int[] { PixelPacker.MODE_THRESHOLD, PixelPacker.MODE_BAYER_8X8 }) {
+            nativeK.setMode(mode);
+            javaK.setMode(mode);
+            for (int format : new int[] { PixelPacker.FORMAT_ARGB_8888, PixelPacker.FORMAT_RGB_565, PixelPacker.FORMAT_ALPHA_8 }) {
+                ByteBuffer pixels = randomPixels(random, 84, 48, format, ByteOrder.nativeOrder());
+                // The Java kernel writing straight into the array of a heap buffer, as into a frame
+                double javaNs   = time(javaK, pixels, format, ByteBuffer.allocate(84 * 48 / 8));
+                double nativeNs = time(nativeK, pixels, format, ByteBuffer.allocateDirect(84 * 48 / 8));
+                System.out.println(String.format("84x48 mode %d format %d: java %.0f ns, native %.0f ns, %.1fx",
+                        mode, format, javaNs, nativeNs, javaNs / nativeNs));
+            }
+        }
+    }
+
+    private static int check(Random random, PixelPacker nativeK, PixelPacker javaK,
+                             int width, int height, int format, ByteOrder order) {
+        ByteBuffer pixels    = randomPixels(random, width, height, format, order);
+        ByteBuffer nativeOut = ByteBuffer.allocateDirect(width * height / 8);
+        ByteBuffer javaOut   = ByteBuffer.allocateDirect(width * height / 8);
+        nativeK.pack(pixels, format, width, height, nativeOut);
+        javaK.pack(pixels, format, width, height, javaOut);
+        byte[]  expected = bytesOf(javaOut);
+        byte[]  actual   = bytesOf(nativeOut);
+        boolean same     = Arrays.equals(expected, actual);
+
+        if (same && format == PixelPacker.FORMAT_ARGB_8888) {
+            int[] argb = new int[width * height];
+            for (int i = 0; i < argb.length; i++) {
+                argb[i] = ((pixels.get(4 * i + 3) & 0xFF) << 24) | ((pixels.get(4 * i) & 0xFF) << 16)
+                        | ((pixels.get(4 * i + 1) & 0xFF) << 8) | (pixels.get(4 * i + 2) & 0xFF);
+            }
+            byte[] reference = new byte[width * height / 8];
+            javaK.pack(argb, width, height, reference);
+            same = Arrays.equals(expected, reference);
+        }
+        if (!same) {
+            System.out.println(String.format("Mismatch %dx%d mode %d format %d %s",
+                    width, height, javaK.getMode(), format, order));
+            System.exit(1);
+        }
+        return 1;
+    }
+
+    private static ByteBuffer randomPixels(Random random, int width, int height, int format, ByteOrder order) {
+        ByteBuffer pixels = ByteBuffer.allocateDirect(width * height * PixelPacker.getBytesPerPixel(format)).order(order);
+        byte[]     bytes  = new byte[pixels.capacity()];
+        random.nextBytes(bytes);
+        pixels.put(bytes);
+        pixels.clear();
+        return pixels;
+    }
+
+    private static byte[] bytesOf(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.capacity()];
+        buffer.clear();
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static double time(PixelPacker packer, ByteBuffer pixels, int format, ByteBuffer out) {
+        for (int i = 0; i < FRAMES; i++) {
+            packer.pack(pixels, format, 84, 48, out);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < FRAMES; i++) {
+            packer.pack(pixels, format, 84, 48, out);
+        }
+        return (System.nanoTime() - start) / (double) FRAMES;
+    }
+}
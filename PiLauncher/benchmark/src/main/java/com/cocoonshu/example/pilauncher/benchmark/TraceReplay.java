@@ -0,0 +1,143 @@
+package com.cocoonshu.example.pilauncher.benchmark;
+
+import com.cocoonshu.example.pilauncher.FrameTraceReader;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Replays frame traces recorded on the device by FrameTraceRecorder, no
+ * panel or Android needed. Prints one line per update with the bytes it took
+ * on the wire, then a summary, and renders the frames as PNG files, scaled up
+ * and dark on light like the panel, or as ASCII art. Several files of a
+ * rotated trace are replayed as one when given oldest first.
+ * Usage: ./gradlew :benchmark:replay -PreplayArgs="[-png dir] [-ascii] [-scale n] name.2.ftr name.1.ftr name.ftr"
+ * @Author Cocoonshu
+ * @Date 2017-05-29
+ */
+public class TraceReplay {
+    private static final int INK   = 0xFF202820;
+    private static final int PAPER = 0xFFB8C8B0;
+
+    public static void main(String[] args) throws IOException {
+        File              pngDirectory = null;
+        boolean           ascii        = false;
+        int               scale        = 4;
+        ArrayList<String> traces       = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if ("-png".equals(args[i]) && i + 1 < args.length) {
+                pngDirectory = new File(args[++i]);
+            } else if ("-ascii".equals(args[i])) {
+                ascii = true;
+            } else if ("-scale".equals(args[i]) && i + 1 < args.length) {
+                scale = Integer.parseInt(args[++i]);
+            } else {
+                traces.add(args[i]);
+            }
+        }
+        if (traces.isEmpty()) {
+            System.out.println("Usage: TraceReplay [-png dir] [-ascii] [-scale n] trace.ftr...");
+            System.exit(2);
+        }
+        if (pngDirectory != null && !pngDirectory.isDirectory() && !pngDirectory.mkdirs()) {
+            throw new IOException("Cannot create " + pngDirectory);
+        }
+
+        FrameTraceReader.Record record       = new FrameTraceReader.Record();
+        long                    firstMicros  = Long.MIN_VALUE;
+        int                     updates      = 0;
+        int                     keyframes    = 0;
+        int                     frameBytes   = 0;
+        long                    spiBytes     = 0;
+        long                    commandBytes = 0;
+        long                    transfers    = 0;
+        long                    traceBytes   = 0;
+        int                     maxSpiBytes  = 0;
+        long                    lastMicros   = 0;
+        System.out.println("  update      ms  type   spi  cmds  xfers  trace");
+        for (String trace : traces) {
+            FrameTraceReader reader = new FrameTraceReader(new FileInputStream(trace));
+            try {
+                if (firstMicros == Long.MIN_VALUE) {
+                    firstMicros = reader.getStartMicros();
+                }
+                frameBytes = reader.getWidth() * reader.getHeight() / 8;
+                while (reader.next(record)) {
+                    long micros = reader.getStartMicros() + record.timeMicros - firstMicros;
+                    System.out.println(String.format("%8d %7.1f %5s %5d %5d %6d %6d", updates, micros / 1000.0,
+                            record.isKeyframe() ? "key" : "delta", record.spiBytes, record.commandBytes,
+                            record.transfers, record.payloadBytes));
+                    if (ascii) {
+                        printFrame(record.frame, reader.getWidth(), reader.getHeight());
+                    }
+                    if (pngDirectory != null) {
+                        writeFrame(record.frame, reader.getWidth(), reader.getHeight(), scale,
+                                new File(pngDirectory, String.format("frame_%06d.png", updates)));
+                    }
+                    updates++;
+                    keyframes    += record.isKeyframe() ? 1 : 0;
+                    spiBytes     += record.spiBytes;
+                    commandBytes += record.commandBytes;
+                    transfers    += record.transfers;
+                    traceBytes   += record.payloadBytes;
+                    maxSpiBytes   = Math.max(maxSpiBytes, record.spiBytes);
+                    lastMicros    = micros;
+                }
+                if (reader.isTruncated()) {
+                    System.out.println(trace + " ends in a partial record");
+                }
+            } finally {
+                reader.close();
+            }
+        }
+
+        if (updates == 0) {
+            System.out.println("No frames");
+            return;
+        }
+        System.out.println(String.format("%d updates over %.1f s, %d keyframes", updates, lastMicros / 1e6, keyframes));
+        System.out.println(String.format("wire: %d bytes, %d of commands, in %d transfers, %.1f bytes/update, max %d, full frame %d",
+                spiBytes, commandBytes, transfers, spiBytes / (double) updates, maxSpiBytes, frameBytes));
+        System.out.println(String.format("trace: %.1f frame bytes/update", traceBytes / (double) updates));
+    }
+
+    private static boolean isSet(byte[] frame, int width, int x, int y) {
+        return (frame[(y >> 3) * width + x] & (1 << (y & 7))) != 0;
+    }
+
+    /**
+     * Two rows a line, so the frame keeps about its proportions in a terminal
+     */
+    private static void printFrame(byte[] frame, int width, int height) {
+        StringBuilder out = new StringBuilder((width + 1) * height / 2);
+        for (int y = 0; y < height; y += 2) {
+            for (int x = 0; x < width; x++) {
+                boolean top    = isSet(frame, width, x, y);
+                boolean bottom = y + 1 < height && isSet(frame, width, x, y + 1);
+                out.append(top ? (bottom ? '#' : '"') : (bottom ? ',' : ' '));
+            }
+            out.append('\n');
+        }
+        System.out.print(out);
+    }
+
+    private static void writeFrame(byte[] frame, int width, int height, int scale, File file) throws IOException {
+        BufferedImage image = new BufferedImage(width * scale, height * scale, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int color = isSet(frame, width, x, y) ? INK : PAPER;
+                for (int dy = 0; dy < scale; dy++) {
+                    for (int dx = 0; dx < scale; dx++) {
+                        image.setRGB(x * scale + dx, y * scale + dy, color);
+                    }
+                }
+            }
+        }
+        ImageIO.write(image, "png", file);
+    }
+}